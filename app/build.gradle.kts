@@ -29,10 +29,11 @@ android {
         viewBinding = true
     }
 }
-val cameraxVersion = "1.2.2"
+val cameraxVersion = "1.3.4"
 val nanohttpdVersion = "2.3.1"
 
 dependencies {
+    implementation(project(":streamcore"))
     implementation("androidx.camera:camera-core:${cameraxVersion}")
     implementation("androidx.camera:camera-camera2:${cameraxVersion}")
     implementation("androidx.camera:camera-lifecycle:${cameraxVersion}")
@@ -40,6 +41,7 @@ dependencies {
     implementation("androidx.camera:camera-view:${cameraxVersion}")
     implementation("androidx.camera:camera-extensions:${cameraxVersion}")
     implementation("org.nanohttpd:nanohttpd:${nanohttpdVersion}");
+    implementation("org.nanohttpd:nanohttpd-websocket:${nanohttpdVersion}");
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
@@ -0,0 +1,103 @@
+package com.example.remotecamera.Codec;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/* Runs the MediaCodec encoder on synthetic frames, so it needs a device but no camera */
+@RunWith(AndroidJUnit4.class)
+public class H264EncoderTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static final class Unit {
+        final byte[] data;
+        final boolean keyFrame;
+
+        Unit(byte[] data, boolean keyFrame) {
+            this.data = data;
+            this.keyFrame = keyFrame;
+        }
+    }
+
+    // NAL unit types following every 00 00 01 start code of an Annex-B access unit
+    private static List<Integer> nalTypes(byte[] unit) {
+        List<Integer> types = new ArrayList<>();
+        for (int i = 0; i + 3 < unit.length; i++) {
+            if (unit[i] == 0 && unit[i + 1] == 0 && unit[i + 2] == 1) {
+                types.add(unit[i + 3] & 0x1F);
+                i += 2;
+            }
+        }
+        return types;
+    }
+
+    // Frames are timestamped at the configured rate; a key frame is requested before frame keyFrameAt, -1 for none
+    private static List<Unit> encode(H264EncoderConfig config, int frames, int keyFrameAt) throws Exception {
+        List<Unit> units = new ArrayList<>();
+        H264Encoder encoder = new H264Encoder(config, (unit, keyFrame) -> {
+            synchronized (units) {
+                units.add(new Unit(unit, keyFrame));
+            }
+        });
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, config.getFrameRate());
+        encoder.start(WIDTH, HEIGHT);
+        try {
+            for (int i = 0; i < frames; i++) {
+                if (i == keyFrameAt) encoder.requestKeyFrame();
+                byte[] frame = source.nextFrame();
+                // Give the codec a moment when all input buffers are busy
+                for (int attempt = 0; attempt < 50 && !encoder.encode(frame, source.getPresentationTimeUs()); attempt++) {
+                    Thread.sleep(5);
+                }
+            }
+            Thread.sleep(500);
+        } finally {
+            encoder.stop();
+        }
+        synchronized (units) {
+            return new ArrayList<>(units);
+        }
+    }
+
+    @Test
+    public void keyFramesCarryParameterSets() throws Exception {
+        H264EncoderConfig config = new H264EncoderConfig(1_000_000, 15, 1);
+        List<Unit> units = encode(config, 45, -1);
+
+        assertFalse("Encoder produced no output", units.isEmpty());
+        assertTrue("First access unit must be a key frame", units.get(0).keyFrame);
+        int keyFrames = 0;
+        for (Unit unit : units) {
+            List<Integer> types = nalTypes(unit.data);
+            assertFalse("Access unit without a start code", types.isEmpty());
+            if (!unit.keyFrame) continue;
+            keyFrames++;
+            // SPS and PPS in front of every IDR slice, so clients can join at any key frame
+            assertTrue("Key frame without SPS: " + types, types.contains(7));
+            assertTrue("Key frame without PPS: " + types, types.contains(8));
+            assertTrue("Key frame without IDR slice: " + types, types.contains(5));
+        }
+        // Three seconds of frames with a one second GOP
+        assertTrue("Expected several key frames, got " + keyFrames, keyFrames >= 2);
+    }
+
+    @Test
+    public void requestedKeyFrameIsHonoured() throws Exception {
+        H264EncoderConfig config = new H264EncoderConfig(1_000_000, 15, 10);
+        List<Unit> units = encode(config, 30, 15);
+        int keyFrames = 0;
+        for (Unit unit : units) {
+            if (unit.keyFrame) keyFrames++;
+        }
+        // The initial key frame plus the requested one, well inside the ten second GOP
+        assertTrue("Expected a requested key frame, got " + keyFrames, keyFrames >= 2);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.remotecamera.Codec;
+
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Encodes NV21 frames to H.264 with MediaCodec and hands out Annex-B access units.
+ * The platform's preferred (usually hardware) encoder is tried first, then a software AVC
+ * encoder. Every key frame is prefixed with SPS/PPS so clients can join at any key frame.
+ */
+public class H264Encoder {
+
+    public interface Listener {
+        void onEncodedUnit(byte[] unit, boolean keyFrame);
+    }
+
+    private static final String TAG = "H264Encoder";
+    private static final String MIME = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final long DRAIN_TIMEOUT_US = 10_000;
+
+    private final H264EncoderConfig config;
+    private final Listener listener;
+    private MediaCodec codec;
+    private Thread drainThread;
+    private volatile boolean running = false;
+    private volatile boolean keyFrameRequested = false;
+    private byte[] codecConfig = new byte[0];
+    private int width;
+    private int height;
+
+    public H264Encoder(H264EncoderConfig config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+    }
+
+    public synchronized void start(int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        MediaFormat format = MediaFormat.createVideoFormat(MIME, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.getBitrate());
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, config.getFrameRate());
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, config.getGopSeconds());
+
+        codec = MediaCodec.createEncoderByType(MIME);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.w(TAG, "Default encoder " + codec.getName() + " rejected " + config + ", trying software encoder", e);
+            codec.release();
+            codec = createSoftwareEncoder();
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        }
+        Log.d(TAG, "Encoding " + width + "x" + height + " with " + codec.getName() + " (" + config + ")");
+        codec.start();
+
+        running = true;
+        drainThread = new Thread(this::drain, "H264-drain");
+        drainThread.start();
+    }
+
+    private static MediaCodec createSoftwareEncoder() throws IOException {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo info : codecList.getCodecInfos()) {
+            if (!info.isEncoder()) continue;
+            String name = info.getName();
+            if (!name.startsWith("OMX.google.") && !name.startsWith("c2.android.")) continue;
+            for (String type : info.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(MIME)) {
+                    return MediaCodec.createByCodecName(name);
+                }
+            }
+        }
+        throw new IOException("No software H.264 encoder available");
+    }
+
+    // Returns false when the encoder had no free input buffer and the frame was skipped
+    public synchronized boolean encode(byte[] nv21, long presentationTimeUs) {
+        if (!running) return false;
+        try {
+            if (keyFrameRequested) {
+                keyFrameRequested = false;
+                Bundle params = new Bundle();
+                params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+                codec.setParameters(params);
+            }
+            int index = codec.dequeueInputBuffer(0);
+            if (index < 0) return false;
+            Image image = codec.getInputImage(index);
+            if (image == null) {
+                codec.queueInputBuffer(index, 0, 0, presentationTimeUs, 0);
+                return false;
+            }
+            fillImage(image, nv21);
+            codec.queueInputBuffer(index, 0, width * height * 3 / 2, presentationTimeUs, 0);
+            return true;
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to queue frame", e);
+            return false;
+        }
+    }
+
+    private void fillImage(Image image, byte[] nv21) {
+        Image.Plane[] planes = image.getPlanes();
+        ByteBuffer yBuffer = planes[0].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(row * yRowStride);
+            yBuffer.put(nv21, row * width, width);
+        }
+
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        int chromaOffset = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            int src = chromaOffset + row * width;
+            int dst = row * uvRowStride;
+            for (int col = 0; col < width / 2; col++) {
+                vBuffer.put(dst, nv21[src++]);
+                uBuffer.put(dst, nv21[src++]);
+                dst += uvPixelStride;
+            }
+        }
+    }
+
+    // Applied with the next queued frame, so it is safe to call from any thread
+    public void requestKeyFrame() {
+        keyFrameRequested = true;
+    }
+
+    private void drain() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        try {
+            while (running) {
+                int index = codec.dequeueOutputBuffer(info, DRAIN_TIMEOUT_US);
+                if (index < 0) continue;
+                ByteBuffer output = codec.getOutputBuffer(index);
+                byte[] unit = new byte[info.size];
+                if (output != null) {
+                    output.position(info.offset);
+                    output.get(unit, 0, info.size);
+                }
+                codec.releaseOutputBuffer(index, false);
+
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    codecConfig = unit;
+                    continue;
+                }
+                boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+                if (keyFrame && codecConfig.length > 0) {
+                    byte[] withConfig = new byte[codecConfig.length + unit.length];
+                    System.arraycopy(codecConfig, 0, withConfig, 0, codecConfig.length);
+                    System.arraycopy(unit, 0, withConfig, codecConfig.length, unit.length);
+                    unit = withConfig;
+                }
+                if (unit.length > 0) listener.onEncodedUnit(unit, keyFrame);
+            }
+        } catch (IllegalStateException e) {
+            if (running) Log.e(TAG, "Encoder drain failed", e);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (drainThread != null) {
+            try {
+                drainThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Encoder stop failed", e);
+            }
+            codec.release();
+            codec = null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.remotecamera.Codec;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * Owns the H.264 encoder for one server and fans its output out to the connected clients.
+ * The encoder only runs while at least one client is attached and is restarted when the
+ * frame size changes.
+ */
+public class H264StreamHub implements H264Encoder.Listener {
+
+    private static final String TAG = "H264StreamHub";
+    private static final long CLIENT_QUEUE_BYTES = 2 * 1024 * 1024;
+
+    private final List<AnnexBStream> clients = new CopyOnWriteArrayList<>();
+    private volatile H264EncoderConfig config;
+    private volatile H264Encoder encoder;
+
+    public H264StreamHub(H264EncoderConfig config) {
+        this.config = config;
+    }
+
+    // Takes effect the next time the encoder is started
+    public void setConfig(H264EncoderConfig config) {
+        this.config = config;
+    }
+
+    public H264EncoderConfig getConfig() {
+        return config;
+    }
+
+    public AnnexBStream addClient() {
+        AnnexBStream client = new AnnexBStream(CLIENT_QUEUE_BYTES, this::requestKeyFrame);
+        clients.add(client);
+        // New viewers can only start decoding at a key frame
+        requestKeyFrame();
+        return client;
+    }
+
+    public boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public synchronized void onRawFrame(byte[] nv21, int width, int height, long presentationTimeUs) {
+        if (clients.isEmpty()) {
+            stopEncoder();
+            return;
+        }
+        if (encoder != null && (encoder.getWidth() != width || encoder.getHeight() != height)) {
+            stopEncoder();
+        }
+        if (encoder == null) {
+            H264Encoder newEncoder = new H264Encoder(config, this);
+            try {
+                newEncoder.start(width, height);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to start H.264 encoder", e);
+                newEncoder.stop();
+                return;
+            }
+            encoder = newEncoder;
+        }
+        encoder.encode(nv21, presentationTimeUs);
+    }
+
+    @Override
+    public void onEncodedUnit(byte[] unit, boolean keyFrame) {
+        for (AnnexBStream client : clients) {
+            if (!client.offer(unit, keyFrame)) {
+                clients.remove(client);
+            }
+        }
+    }
+
+    private void requestKeyFrame() {
+        H264Encoder current = encoder;
+        if (current != null) current.requestKeyFrame();
+    }
+
+    private void stopEncoder() {
+        if (encoder != null) {
+            encoder.stop();
+            encoder = null;
+        }
+    }
+
+    public synchronized void shutdown() {
+        stopEncoder();
+        for (AnnexBStream client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+}
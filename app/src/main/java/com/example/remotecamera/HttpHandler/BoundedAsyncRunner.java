@@ -0,0 +1,88 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/*
+ * Replaces NanoHTTPD's thread-per-connection runner with a bounded pool.
+ * Connections beyond the pool and its short queue get a 503 and are closed straight away
+ * instead of spawning more threads, so a reconnect storm cannot exhaust the phone.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+
+    private final ConnectionPool pool;
+    // Handlers with their client socket, registered by the server just before exec
+    private final Map<NanoHTTPD.ClientHandler, Socket> running = new HashMap<>();
+
+    public BoundedAsyncRunner(int maxThreads, int queueSize, int retryAfterSeconds) {
+        pool = new ConnectionPool(maxThreads, queueSize, retryAfterSeconds);
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        pool.setMaxThreads(maxThreads);
+    }
+
+    // ClientHandler keeps its socket private, so the server hands it over when creating the handler
+    public void register(NanoHTTPD.ClientHandler code, Socket socket) {
+        synchronized (running) {
+            running.put(code, socket);
+        }
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler code) {
+        Socket socket;
+        synchronized (running) {
+            socket = running.get(code);
+            if (socket == null) running.put(code, null);
+        }
+        if (!pool.execute(code, socket)) {
+            closed(code);
+            code.close();
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        synchronized (running) {
+            running.remove(clientHandler);
+        }
+    }
+
+    @Override
+    public void closeAll() {
+        List<NanoHTTPD.ClientHandler> handlers;
+        synchronized (running) {
+            handlers = new ArrayList<>(running.keySet());
+        }
+        for (NanoHTTPD.ClientHandler handler : handlers) {
+            handler.close();
+        }
+    }
+
+    public int getMaxThreads() {
+        return pool.getMaxThreads();
+    }
+
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    public int getQueuedCount() {
+        return pool.getQueuedCount();
+    }
+
+    public long getRejectedCount() {
+        return pool.getRejectedCount();
+    }
+
+    // Every worker is busy and connections are already waiting
+    public boolean isSaturated() {
+        return pool.isSaturated();
+    }
+}
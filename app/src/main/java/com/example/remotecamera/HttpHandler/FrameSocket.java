@@ -0,0 +1,211 @@
+package com.example.remotecamera.HttpHandler;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoWSD;
+
+/*
+ * One dashboard connection on /ws carrying frames, status and torch control.
+ * Every JPEG goes out as one binary message: a 20 byte big-endian header (sequence, capture
+ * time in ms, JPEG size) in the first fragment and the shared JPEG array as the continuation,
+ * so the frame is never copied. Frames are only sent against credits granted by the client
+ * ({"type":"ack"}); without credit just the newest frame is held back.
+ * NanoWSD writes block while holding the socket's monitor, so all writes happen on the socket's
+ * own writer thread and callers only queue: a stalled peer never holds up a fan-out worker or
+ * the thread pushing status.
+ */
+public class FrameSocket extends NanoWSD.WebSocket implements FrameBroadcaster.FrameSink {
+
+    public interface Listener {
+        void onSocketOpen(FrameSocket socket);
+
+        void onTorch(boolean on);
+
+        void onSocketClosed(FrameSocket socket);
+    }
+
+    private static final String TAG = "FrameSocket";
+    public static final int HEADER_SIZE = 20;
+    private static final int INITIAL_CREDITS = 1;
+    private static final int MAX_CREDITS = 8;
+
+    private final Listener listener;
+    private volatile FrameBroadcaster.Subscription subscription;
+    // Only used by the writer thread, a frame header is fully written before the next is built
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    // Guarded by outbound, never by this since NanoWSD's sendFrame synchronizes on the socket
+    private final Object outbound = new Object();
+    // Bounded by MAX_CREDITS, every queued frame used up a credit
+    private final ArrayDeque<Frame> queuedFrames = new ArrayDeque<>();
+    private int credits = INITIAL_CREDITS;
+    private Frame pending;
+    private String queuedStatus;
+    private boolean pingDue = false;
+    private boolean closing = false;
+    private boolean closed = false;
+
+    public FrameSocket(NanoHTTPD.IHTTPSession handshake, Listener listener) {
+        super(handshake);
+        this.listener = listener;
+    }
+
+    public void setSubscription(FrameBroadcaster.Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    @Override
+    protected void onOpen() {
+        Log.d(TAG, "WebSocket client connected: " + getHandshakeRequest().getRemoteIpAddress());
+        Thread writer = new Thread(this::writeLoop, "WebSocket-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Frames may only follow the handshake response, so the subscription starts here
+        listener.onSocketOpen(this);
+    }
+
+    // Runs on a fan-out worker and only queues, credits keep the queue short
+    @Override
+    public void onFrame(Frame frame) throws IOException {
+        synchronized (outbound) {
+            if (closed || closing) throw new IOException("Socket closed");
+            if (credits == 0) {
+                pending = frame;
+                return;
+            }
+            credits--;
+            queuedFrames.add(frame);
+            outbound.notifyAll();
+        }
+    }
+
+    // Only the newest status is kept when the writer falls behind
+    public void sendStatus(String status) {
+        synchronized (outbound) {
+            if (closed || closing) return;
+            queuedStatus = status;
+            outbound.notifyAll();
+        }
+    }
+
+    // Keeps the connection alive through NanoHTTPD's socket read timeout, browsers answer with a pong
+    public void keepAlive() {
+        synchronized (outbound) {
+            if (closed || closing) return;
+            pingDue = true;
+            outbound.notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Frame frame;
+                String status;
+                boolean ping;
+                synchronized (outbound) {
+                    while (!closed && !closing && queuedFrames.isEmpty() && queuedStatus == null && !pingDue) {
+                        outbound.wait();
+                    }
+                    if (closed) return;
+                    if (closing) break;
+                    frame = queuedFrames.poll();
+                    status = queuedStatus;
+                    queuedStatus = null;
+                    ping = pingDue;
+                    pingDue = false;
+                }
+                if (status != null) send("{\"type\":\"status\",\"status\":" + status + "}");
+                if (ping) ping(new byte[0]);
+                if (frame != null) sendJpeg(frame);
+            }
+            close(NanoWSD.WebSocketFrame.CloseCode.GoingAway, "Server stopping", false);
+        } catch (IOException e) {
+            Log.d(TAG, "Write failed: " + e.getMessage());
+            FrameBroadcaster.Subscription current = subscription;
+            if (current != null) current.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendJpeg(Frame frame) throws IOException {
+        byte[] data = frame.getData();
+        header.clear();
+        header.putLong(frame.getSequence())
+                .putLong(frame.getTimestampMillis())
+                .putInt(data.length);
+        sendFrame(new NanoWSD.WebSocketFrame(NanoWSD.WebSocketFrame.OpCode.Binary, false, header.array()));
+        sendFrame(new NanoWSD.WebSocketFrame(NanoWSD.WebSocketFrame.OpCode.Continuation, true, data));
+    }
+
+    @Override
+    protected void onMessage(NanoWSD.WebSocketFrame message) {
+        if (message.getOpCode() != NanoWSD.WebSocketFrame.OpCode.Text) return;
+        try {
+            JSONObject json = new JSONObject(message.getTextPayload());
+            String type = json.optString("type");
+            if (type.equals("ack")) {
+                grantCredits(json.optInt("credits", 1));
+            } else if (type.equals("torch")) {
+                listener.onTorch(json.optBoolean("on", false));
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Ignoring malformed message: " + e.getMessage());
+        }
+    }
+
+    private void grantCredits(int granted) {
+        synchronized (outbound) {
+            credits = Math.min(MAX_CREDITS, credits + Math.max(0, granted));
+            if (credits > 0 && pending != null) {
+                credits--;
+                queuedFrames.add(pending);
+                pending = null;
+                outbound.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    protected void onPong(NanoWSD.WebSocketFrame pong) {
+    }
+
+    // The broadcaster dropped this client, the writer sends the close frame once the queue is cut off
+    @Override
+    public void onClosed() {
+        synchronized (outbound) {
+            if (closed || closing) return;
+            closing = true;
+            queuedFrames.clear();
+            pending = null;
+            outbound.notifyAll();
+        }
+    }
+
+    @Override
+    protected void onClose(NanoWSD.WebSocketFrame.CloseCode code, String reason, boolean initiatedByRemote) {
+        synchronized (outbound) {
+            closed = true;
+            queuedFrames.clear();
+            pending = null;
+            queuedStatus = null;
+            outbound.notifyAll();
+        }
+        if (subscription != null) subscription.close();
+        listener.onSocketClosed(this);
+    }
+
+    @Override
+    protected void onException(IOException exception) {
+        Log.d(TAG, "WebSocket error: " + exception.getMessage());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.remotecamera.HttpHandler;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import com.example.remotecamera.Imaging.NV21Scaler;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Downscaled / re-quality JPEG variants of the camera feed, e.g. /stream?w=320&q=50.
+ * A variant is only encoded while it has subscribers, and its single encode per frame is shared
+ * by all of them through its own broadcaster. Variants nobody has watched for a while are evicted.
+ */
+public class FrameVariantCache {
+
+    private static final String TAG = "FrameVariantCache";
+    private static final long IDLE_EVICT_MS = 10_000;
+    private static final int MAX_VARIANTS = 8;
+
+    private final Map<String, Variant> variants = new ConcurrentHashMap<>();
+    private final ExecutorService deliveryExecutor;
+    private final ExecutorService encodeExecutor;
+
+    public FrameVariantCache(ExecutorService deliveryExecutor, ExecutorService encodeExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+        this.encodeExecutor = encodeExecutor;
+    }
+
+    public static String key(int width, int quality) {
+        return width + "@" + quality;
+    }
+
+    // Returns null when the variant limit has been reached
+    public synchronized FrameBroadcaster acquire(int width, int quality) {
+        String key = key(width, quality);
+        Variant variant = variants.get(key);
+        if (variant == null) {
+            if (variants.size() >= MAX_VARIANTS) return null;
+            variant = new Variant(width, quality);
+            variants.put(key, variant);
+        }
+        variant.lastUsedMillis = System.currentTimeMillis();
+        return variant.broadcaster;
+    }
+
+    public int getSubscriberCount() {
+        int count = 0;
+        for (Variant variant : variants.values()) {
+            count += variant.broadcaster.getSubscriberCount();
+        }
+        return count;
+    }
+
+    public boolean hasSubscribers() {
+        for (Variant variant : variants.values()) {
+            if (variant.broadcaster.getSubscriberCount() > 0) return true;
+        }
+        return false;
+    }
+
+    // Runs on the camera thread; the NV21 array is only read before this returns
+    public void onRawFrame(byte[] nv21, int width, int height) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Variant> entry : variants.entrySet()) {
+            Variant variant = entry.getValue();
+            if (variant.broadcaster.getSubscriberCount() > 0) {
+                variant.lastUsedMillis = now;
+                variant.encode(nv21, width, height);
+            } else if (now - variant.lastUsedMillis > IDLE_EVICT_MS) {
+                evict(entry.getKey(), variant);
+            }
+        }
+    }
+
+    // Placeholder frames (e.g. camera stopped) go to every variant as they are
+    public void publishToAll(byte[] jpeg) {
+        for (Variant variant : variants.values()) {
+            variant.broadcaster.publish(jpeg);
+        }
+    }
+
+    private synchronized void evict(String key, Variant variant) {
+        if (variant.broadcaster.getSubscriberCount() > 0) return;
+        variants.remove(key, variant);
+        variant.broadcaster.shutdown();
+        Log.d(TAG, "Evicted unused stream variant " + key);
+    }
+
+    public synchronized void shutdown() {
+        for (Variant variant : variants.values()) {
+            variant.broadcaster.shutdown();
+        }
+        variants.clear();
+    }
+
+    private final class Variant {
+        private final int width;
+        private final int quality;
+        private final FrameBroadcaster broadcaster = new FrameBroadcaster(deliveryExecutor);
+        private final NV21Scaler scaler = new NV21Scaler();
+        // Full width copy of the frame, reused like the scaler's output while encoding is set
+        private byte[] fullFrame = new byte[0];
+        // Encoder output, also only used while encoding is set; the published JPEG is a fresh copy
+        private final ByteArrayOutputStream jpegOut = new ByteArrayOutputStream();
+        private final AtomicBoolean encoding = new AtomicBoolean(false);
+        private volatile long lastUsedMillis;
+
+        private Variant(int width, int quality) {
+            this.width = width;
+            this.quality = quality;
+        }
+
+        private void encode(byte[] nv21, int sourceWidth, int sourceHeight) {
+            // Still busy with an earlier frame, this variant skips the current one
+            if (!encoding.compareAndSet(false, true)) return;
+
+            final byte[] scaled;
+            final int scaledWidth;
+            final int scaledHeight;
+            if (width >= sourceWidth) {
+                if (fullFrame.length != nv21.length) fullFrame = new byte[nv21.length];
+                System.arraycopy(nv21, 0, fullFrame, 0, nv21.length);
+                scaled = fullFrame;
+                scaledWidth = sourceWidth;
+                scaledHeight = sourceHeight;
+            } else {
+                scaled = scaler.scale(nv21, sourceWidth, sourceHeight, width);
+                scaledWidth = scaler.getTargetWidth();
+                scaledHeight = scaler.getTargetHeight();
+            }
+
+            try {
+                encodeExecutor.execute(() -> {
+                    try {
+                        YuvImage yuvImage = new YuvImage(scaled, ImageFormat.NV21, scaledWidth, scaledHeight, null);
+                        jpegOut.reset();
+                        yuvImage.compressToJpeg(new Rect(0, 0, scaledWidth, scaledHeight), quality, jpegOut);
+                        broadcaster.publish(jpegOut.toByteArray());
+                    } finally {
+                        encoding.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                encoding.set(false);
+                Log.e(TAG, "Failed to schedule variant encode", e);
+            }
+        }
+    }
+}
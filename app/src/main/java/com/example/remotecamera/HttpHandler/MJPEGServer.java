@@ -2,77 +2,457 @@ package com.example.remotecamera.HttpHandler;
 
 import android.util.Log;
 
+import com.example.remotecamera.Codec.H264EncoderConfig;
+import com.example.remotecamera.Codec.H264StreamHub;
+import com.example.remotecamera.Imaging.MotionDetector;
 import com.example.remotecamera.Interface.IStreamable;
+import com.example.remotecamera.Metrics.PipelineMetrics;
 import com.example.remotecamera.R;
+import com.example.remotecamera.Recording.AviClipStream;
+import com.example.remotecamera.Recording.FrameRingBuffer;
+import com.example.remotecamera.Recording.SegmentIndex;
+import com.example.remotecamera.Recording.SegmentRecorder;
+import com.example.remotecamera.ServiceCallback.EventBus;
+import com.example.remotecamera.ServiceCallback.StreamStateEvent;
+import com.example.remotecamera.Services.StreamProfile;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoWSD;
 import java.util.Map;
 
-public class MJPEGServer extends NanoHTTPD {
+public class MJPEGServer extends NanoWSD {
 
     private static final String TAG = "MJPEGServer";
 
-    private volatile byte[] latestFrame;
+    private static final int FANOUT_WORKERS = 4;
+    private static final int VARIANT_ENCODE_WORKERS = 2;
+    private static final int VARIANT_WIDTH_STEP = 16;
+    private static final long STREAM_KEEPALIVE_MS = 10_000;
+    private static final int DEFAULT_VARIANT_QUALITY = 80;
+    private static final long MAX_SNAPSHOT_WAIT_MS = 30_000;
+    // Snapshot pollers keep full resolution capture running this long after their last request
+    private static final long SNAPSHOT_DEMAND_MS = 10_000;
+
+    // Off unless requested, like segment recording: a clip buffer keeps capture running without viewers
+    public static final int DEFAULT_CLIP_BUFFER_MB = 0;
+    // Enough slots for the byte budget at small frame sizes
+    private static final int CLIP_BUFFER_FRAMES = 4096;
+    private static final int DEFAULT_CLIP_SECONDS = 30;
+
+    private static final String RECORDINGS_PREFIX = "/recordings/";
+    private static final String CAMERA_STREAM_PREFIX = "/stream/";
+
+    private static final String WEBSOCKET_PATH = "/ws";
+    // Must stay below NanoHTTPD.SOCKET_READ_TIMEOUT
+    private static final long WEBSOCKET_PING_MS = 2_000;
+
+    private static final long EVENT_KEEPALIVE_MS = 15_000;
+    private static final long STATUS_TICK_MS = 1_000;
+
+    public static final int DEFAULT_MAX_STREAMS = 16;
+    // Workers kept free for short requests on top of the stream limit
+    private static final int REQUEST_WORKERS = 8;
+    private static final int CONNECTION_QUEUE = 16;
+    private static final int RETRY_AFTER_SECONDS = 5;
+
+    private static final String ASSET_PAGE = "mjpeg_page";
+    private static final String ASSET_STYLE = "mjpeg_style";
+    private static final String ASSET_SCRIPT = "script";
+    private static final String ASSET_NO_CAMERA = "nocamera";
+    private static final String ASSET_LATENCY = "latency";
 
     private final Object frameLock = new Object();
+    private final StaticAssetCache assetCache = new StaticAssetCache();
     private final IStreamable streamableContext;
+    private final ExecutorService deliveryExecutor = FrameBroadcaster.newDeliveryPool(FANOUT_WORKERS);
+    private final ExecutorService variantEncodeExecutor = Executors.newFixedThreadPool(VARIANT_ENCODE_WORKERS);
+    private final FrameBroadcaster broadcaster = new FrameBroadcaster(deliveryExecutor);
+    private final FrameVariantCache variantCache = new FrameVariantCache(deliveryExecutor, variantEncodeExecutor);
+    private volatile long snapshotDemandUntilMs = 0;
+    private final H264StreamHub h264Hub = new H264StreamHub(H264EncoderConfig.defaults());
+    // Additional cameras by camera id, each with its own frames and clients; the primary camera uses broadcaster
+    private final Map<String, FrameBroadcaster> cameraBroadcasters = new ConcurrentHashMap<>();
+    private volatile String primaryCameraId;
+    private volatile Set<String> timeSlicedCameras = Collections.emptySet();
+
+    private final MotionDetector motionDetector = new MotionDetector();
+    // Recent full resolution frames for /clip, null while disabled
+    private volatile FrameRingBuffer clipBuffer;
+    // Continuous recording to disk, null while disabled
+    private volatile SegmentRecorder segmentRecorder;
+
+    private final BoundedAsyncRunner asyncRunner = new BoundedAsyncRunner(DEFAULT_MAX_STREAMS + REQUEST_WORKERS, CONNECTION_QUEUE, RETRY_AFTER_SECONDS);
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private volatile int maxStreams = DEFAULT_MAX_STREAMS;
+
+    private final List<EventStream> eventClients = new CopyOnWriteArrayList<>();
+    private final List<FrameSocket> socketClients = new CopyOnWriteArrayList<>();
+    // WebSocket pings and status events from the bus, off the publishing threads
+    private final ScheduledExecutorService eventExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Server-events");
+        t.setDaemon(true);
+        return t;
+    });
+    private final FrameSocket.Listener socketListener = new FrameSocket.Listener() {
+        @Override
+        public void onSocketOpen(FrameSocket socket) {
+            socketClients.add(socket);
+            String status;
+            synchronized (statusLock) {
+                status = lastStatus;
+            }
+            if (!status.isEmpty()) socket.sendStatus(status);
+            if (broadcaster.getLatest() == null) {
+                try {
+                    setLatestFrame(null);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to load placeholder frame: " + e.getMessage());
+                }
+            }
+            socket.setSubscription(broadcaster.subscribe(socket));
+            publishStatus();
+        }
+
+        @Override
+        public void onTorch(boolean on) {
+            streamableContext.setFlashlight(on);
+        }
+
+        @Override
+        public void onSocketClosed(FrameSocket socket) {
+            if (socketClients.remove(socket)) activeStreams.decrementAndGet();
+            publishStatus();
+        }
+    };
+    private EventBus.Subscription<StreamStateEvent> streamStateSubscription;
+    private final Object statusLock = new Object();
+    private String lastStatus = "";
+    private int framesSinceTick = 0;
+    private long nextStatusTickMs = 0;
+    private volatile float currentFps = 0;
 
     public MJPEGServer(int port, IStreamable streamableContext) {
         super(port);
         this.streamableContext = streamableContext;
+        setAsyncRunner(asyncRunner);
+        loadAssets();
+        streamStateSubscription = EventBus.getInstance().subscribe(StreamStateEvent.class, eventExecutor, event -> publishStatus());
+        eventExecutor.scheduleWithFixedDelay(() -> {
+            for (FrameSocket socket : socketClients) {
+                socket.keepAlive();
+            }
+        }, WEBSOCKET_PING_MS, WEBSOCKET_PING_MS, TimeUnit.MILLISECONDS);
         // TODO: Flashlight toggle functionality
     }
 
+    // Lets the runner answer a turned away connection with a 503 instead of a silent close
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        ClientHandler handler = super.createClientHandler(finalAccept, inputStream);
+        asyncRunner.register(handler, finalAccept);
+        return handler;
+    }
+
     // Called  whenever a new JPEG frame is ready
     public void setLatestFrame(byte[] frame) throws IOException {
-        if (frame != null) {
-            synchronized (frameLock) {
-                latestFrame = frame;
-                frameLock.notifyAll();
-            }
+        setLatestFrame(frame, System.currentTimeMillis());
+    }
+
+    // captureMillis is the wall clock time the frame was taken by the sensor
+    public void setLatestFrame(byte[] frame, long captureMillis) throws IOException {
+        if (frame == null) {
+            frame = getNoCameraImage();
+            variantCache.publishToAll(frame);
         } else {
-            latestFrame = getNoCameraImage();
+            FrameRingBuffer clip = clipBuffer;
+            if (clip != null) clip.add(frame, captureMillis);
+            SegmentRecorder recorder = segmentRecorder;
+            if (recorder != null) recorder.offer(frame, captureMillis);
+        }
+        PipelineMetrics.FRAMES_PUBLISHED.increment();
+        synchronized (frameLock) {
+            broadcaster.publish(frame, captureMillis);
+            frameLock.notifyAll();
+        }
+        tickStatus();
+    }
+
+    // Measures the frame rate and pushes a status event at most once per tick
+    private void tickStatus() {
+        boolean due;
+        synchronized (statusLock) {
+            framesSinceTick++;
+            long now = System.currentTimeMillis();
+            due = now >= nextStatusTickMs;
+            if (due) {
+                long elapsed = now - nextStatusTickMs + STATUS_TICK_MS;
+                currentFps = nextStatusTickMs == 0 ? 0 : framesSinceTick * 1000f / elapsed;
+                framesSinceTick = 0;
+                nextStatusTickMs = now + STATUS_TICK_MS;
+            }
+        }
+        if (due) requestStatus();
+    }
+
+    // Capture, publish and analyzer threads hand the status push to the event thread
+    private void requestStatus() {
+        try {
+            eventExecutor.execute(this::publishStatus);
+        } catch (RejectedExecutionException e) {
+            // Server stopping
+        }
+    }
+
+    // Pushes the current state to every /events client when it differs from the last push
+    public void publishStatus() {
+        if (!streamableContext.isStreaming()) currentFps = 0;
+        String status = "{\"streaming\":" + streamableContext.isStreaming()
+                + ",\"flashlight\":" + streamableContext.getFlashlightState()
+                + ",\"fps\":" + Math.round(currentFps)
+                + ",\"clients\":" + getClientCount()
+                + ",\"motion\":" + motionDetector.isMotion() + "}";
+        synchronized (statusLock) {
+            if (status.equals(lastStatus)) return;
+            lastStatus = status;
+        }
+        byte[] event = EventStream.encode("status", status);
+        for (EventStream client : eventClients) {
+            if (!client.offer(event)) eventClients.remove(client);
+        }
+        for (FrameSocket socket : socketClients) {
+            socket.sendStatus(status);
+        }
+    }
+
+    private int getClientCount() {
+        int count = broadcaster.getSubscriberCount() + variantCache.getSubscriberCount() + h264Hub.getClientCount();
+        for (FrameBroadcaster camera : cameraBroadcasters.values()) {
+            count += camera.getSubscriberCount();
+        }
+        return count;
+    }
+
+    // Frames of additional cameras only feed their own /stream/{cameraId} clients
+    public void setLatestCameraFrame(String cameraId, byte[] frame, long captureMillis) throws IOException {
+        if (cameraId.equals(primaryCameraId)) {
+            setLatestFrame(frame, captureMillis);
+            return;
+        }
+        FrameBroadcaster camera = cameraBroadcasters.get(cameraId);
+        if (camera == null) return;
+        PipelineMetrics.FRAMES_PUBLISHED.increment();
+        camera.publish(frame, captureMillis);
+    }
+
+    /*
+     * Called by the camera service once it has enumerated the cameras. Time-sliced cameras share
+     * the sensor pipeline with others and only deliver frames while it is their turn.
+     */
+    public void setCameras(String primaryId, List<String> cameraIds, Set<String> timeSliced) {
+        primaryCameraId = primaryId;
+        timeSlicedCameras = timeSliced;
+        for (String cameraId : cameraIds) {
+            if (!cameraId.equals(primaryId)) cameraBroadcasters.computeIfAbsent(cameraId, id -> new FrameBroadcaster(deliveryExecutor));
+        }
+        for (Map.Entry<String, FrameBroadcaster> entry : cameraBroadcasters.entrySet()) {
+            if (!cameraIds.contains(entry.getKey()) || entry.getKey().equals(primaryId)) {
+                cameraBroadcasters.remove(entry.getKey());
+                entry.getValue().shutdown();
+            }
+        }
+    }
+
+    public boolean hasCameraSubscribers(String cameraId) {
+        if (cameraId.equals(primaryCameraId)) return hasActiveSubscribers();
+        FrameBroadcaster camera = cameraBroadcasters.get(cameraId);
+        return camera != null && camera.getSubscriberCount() > 0;
+    }
+
+    // Called with the raw NV21 frame the JPEG was encoded from
+    public void setLatestRawFrame(byte[] nv21, int width, int height, long timestampUs) {
+        variantCache.onRawFrame(nv21, width, height);
+        h264Hub.onRawFrame(nv21, width, height, timestampUs);
+    }
+
+    // Runs the motion detector on the camera's Y plane, status clients hear about every transition
+    public boolean updateMotion(ByteBuffer yPlane, int rowStride, int width, int height) {
+        boolean wasMotion = motionDetector.isMotion();
+        boolean motion = motionDetector.update(yPlane, rowStride, width, height, System.currentTimeMillis());
+        if (motion != wasMotion) requestStatus();
+        return motion;
+    }
+
+    // Lets the camera skip frame processing entirely while nothing is being served or recorded
+    public boolean hasActiveSubscribers() {
+        return hasFullFrameSubscribers() || variantCache.hasSubscribers() || h264Hub.hasClients();
+    }
+
+    // Lets the camera skip the full resolution encode while nobody watches /stream
+    public boolean hasFullFrameSubscribers() {
+        return broadcaster.getSubscriberCount() > 0 || System.currentTimeMillis() < snapshotDemandUntilMs
+                || clipBuffer != null || segmentRecorder != null;
+    }
+
+    public void setSegmentRecorder(SegmentRecorder recorder) {
+        this.segmentRecorder = recorder;
+    }
+
+    // Keeps the last clipBufferMb of full resolution frames for /clip, 0 disables recording
+    public void setClipBufferSize(int clipBufferMb) {
+        clipBuffer = clipBufferMb > 0 ? new FrameRingBuffer(clipBufferMb * 1024 * 1024, CLIP_BUFFER_FRAMES) : null;
+    }
+
+    public void setMaxStreams(int maxStreams) {
+        this.maxStreams = Math.max(1, maxStreams);
+        asyncRunner.setMaxThreads(this.maxStreams + REQUEST_WORKERS);
+    }
+
+    public void setH264Config(H264EncoderConfig config) {
+        h264Hub.setConfig(config);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        streamStateSubscription.close();
+        eventExecutor.shutdownNow();
+        for (EventStream client : eventClients) {
+            client.close();
+        }
+        broadcaster.shutdown();
+        for (FrameBroadcaster camera : cameraBroadcasters.values()) {
+            camera.shutdown();
         }
+        variantCache.shutdown();
+        h264Hub.shutdown();
+        SegmentRecorder recorder = segmentRecorder;
+        if (recorder != null) recorder.stop();
+        deliveryExecutor.shutdownNow();
+        variantEncodeExecutor.shutdownNow();
     }
 
     private byte[] getNoCameraImage() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        InputStream noCameraInputStream = streamableContext.getContext().getResources().openRawResource(R.raw.nocamera);
-        byte[] data = new byte[1024];
-        int nData;
-        while((nData = noCameraInputStream.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nData);
+        StaticAssetCache.Asset noCamera = assetCache.get(ASSET_NO_CAMERA);
+        if (noCamera == null) throw new IOException("No camera placeholder not loaded");
+        return noCamera.getData();
+    }
+
+    // Assets are read once at startup, requests are served from memory
+    private void loadAssets() {
+        try {
+            assetCache.put(ASSET_PAGE, "text/html; charset=UTF-8", readRawResource(R.raw.mjpeg_page), true);
+            assetCache.put(ASSET_STYLE, "text/css; charset=UTF-8", readRawResource(R.raw.mjpeg_style), true);
+            assetCache.put(ASSET_SCRIPT, "application/javascript; charset=UTF-8", readRawResource(R.raw.script), true);
+            assetCache.put(ASSET_NO_CAMERA, "image/jpeg", readRawResource(R.raw.nocamera), false);
+            assetCache.put(ASSET_LATENCY, "text/html; charset=UTF-8", readRawResource(R.raw.latency), true);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load web assets: " + e.getMessage());
         }
-        return buffer.toByteArray();
     }
+
+    // Assets carry their own precompressed variant, so NanoHTTPD must not gzip on the fly
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        return false;
+    }
+
+    // Upgrades are only accepted on /ws, and each socket holds a stream slot like /stream
     @Override
     public Response serve(IHTTPSession session) {
+        if (!isWebsocketRequested(session)) return serveHttp(session);
+        if (!WEBSOCKET_PATH.equals(session.getUri())) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Not found");
+        }
+        if (asyncRunner.isSaturated() || !StreamSlot.tryReserve(activeStreams, maxStreams)) {
+            Response response = newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Server busy");
+            response.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            return response;
+        }
+        Response response = super.serve(session);
+        // A failed handshake never opens the socket, so its slot is returned here
+        if (response.getStatus() != Response.Status.SWITCH_PROTOCOL) activeStreams.decrementAndGet();
+        return response;
+    }
+
+    @Override
+    protected WebSocket openWebSocket(IHTTPSession handshake) {
+        return new FrameSocket(handshake, socketListener);
+    }
+
+    @Override
+    protected Response serveHttp(IHTTPSession session) {
         String uri = session.getUri();
 
         switch (uri) {
             case "/":
-                return serveHTMLPage(session);
+                return serveAsset(session, ASSET_PAGE);
             case "/stream":
-                return serveMJPEGStream();
+                return serveLimitedStream(() -> serveMJPEGStream(session));
+            case "/snapshot.jpg":
+                return serveSnapshot(session);
+            case "/stream.h264":
+                return serveLimitedStream(this::serveH264Stream);
+            case "/streamClients":
+                return serveStreamClients();
+            case "/serverStats":
+                return serveServerStats();
+            case "/metrics":
+                return serveMetrics();
+            case "/latency":
+                return serveAsset(session, ASSET_LATENCY);
+            case "/time":
+                return serveTime();
             case "/mjpeg_style":
-                return serveCSS();
+                return serveAsset(session, ASSET_STYLE);
             case "/script":
-                return serveJS();
+                return serveAsset(session, ASSET_SCRIPT);
+            case "/events":
+                return serveLimitedStream(this::serveEvents);
             case "/streamStatus":
                 return serveStatus();
+            case "/clip":
+                return serveLimitedStream(() -> serveClip(session));
+            case "/motion":
+                return serveMotion(session);
+            case "/config":
+                return serveConfig(session);
             case "/flashlight":
                 return toggleFlashlight(session);
             case "/flashlightStatus":
                 return newFixedLengthResponse(Response.Status.OK, NanoHTTPD.MIME_PLAINTEXT, Boolean.toString(streamableContext.getFlashlightState()));
+            case "/recordings":
+                return serveRecordingList();
+            case "/cameras":
+                return serveCameraList();
             default:
+                if (uri.startsWith(CAMERA_STREAM_PREFIX)) {
+                    return serveLimitedStream(() -> serveCameraStream(session, uri.substring(CAMERA_STREAM_PREFIX.length())));
+                }
+                if (uri.startsWith(RECORDINGS_PREFIX)) {
+                    return serveLimitedStream(() -> serveRecording(session, uri.substring(RECORDINGS_PREFIX.length())));
+                }
                 return newFixedLengthResponse(Response.Status.NOT_FOUND, NanoHTTPD.MIME_PLAINTEXT, "Not found");
         }
     }
@@ -98,101 +478,413 @@ public class MJPEGServer extends NanoHTTPD {
         }
     }
 
+    // GET /config returns the active profile, ?profile=&width=&height=&fps=&strategy=&queueDepth=&quality= changes it
+    private Response serveConfig(IHTTPSession session) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : StreamProfile.KEYS) {
+            List<String> value = session.getParameters().get(key);
+            if (value != null && !value.isEmpty()) values.put(key, value.get(0));
+        }
+        StreamProfile profile = streamableContext.getStreamProfile();
+        if (!values.isEmpty()) {
+            try {
+                profile = StreamProfile.parse(values, profile);
+            } catch (IllegalArgumentException e) {
+                return newFixedLengthResponse(Response.Status.BAD_REQUEST, MIME_PLAINTEXT, e.getMessage());
+            }
+            // The camera rebinds asynchronously, the response echoes what was requested
+            streamableContext.setStreamProfile(profile);
+        }
+        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", profile.toJson());
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private static long getLongParameter(IHTTPSession session, String name, long defaultValue) {
+        List<String> values = session.getParameters().get(name);
+        if (values == null || values.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(values.get(0));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int getIntParameter(IHTTPSession session, String name, int defaultValue) {
+        List<String> values = session.getParameters().get(name);
+        if (values == null || values.isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(values.get(0));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private Response serveStatus() {
         return newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, Boolean.toString(streamableContext.isStreaming()));
     }
 
 
 
-    private Response serveJS() {
-        try (InputStream jsStream = streamableContext.getContext().getResources().openRawResource(R.raw.script);){
-            ByteArrayOutputStream jsBao = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int read;
-            while ( ( read = jsStream.read(buffer) ) != -1 ) {
-                jsBao.write(buffer, 0, read);
+    private Response serveAsset(IHTTPSession session, String name) {
+        StaticAssetCache.Asset asset = assetCache.get(name);
+        if (asset == null) {
+            Log.e(TAG, "Asset not loaded: " + name);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Failed to load " + name);
+        }
+
+        String acceptEncoding = session.getHeaders().get("accept-encoding");
+        boolean gzip = asset.getGzipData() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? asset.getGzipETag() : asset.getETag();
+        Response response;
+        if (etag.equals(session.getHeaders().get("if-none-match"))) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, asset.getMimeType(), "");
+        } else {
+            byte[] body = gzip ? asset.getGzipData() : asset.getData();
+            response = newFixedLengthResponse(Response.Status.OK, asset.getMimeType(), new ByteArrayInputStream(body), body.length);
+            if (gzip) response.addHeader("Content-Encoding", "gzip");
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    private byte[] readRawResource(int resourceId) throws IOException {
+        try (InputStream in = streamableContext.getContext().getResources().openRawResource(resourceId)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] data = new byte[8192];
+            int nData;
+            while ((nData = in.read(data, 0, data.length)) != -1) {
+                buffer.write(data, 0, nData);
             }
-            String js = jsBao.toString("UTF-8");
-            jsStream.close();
-            jsBao.close();
-            return newFixedLengthResponse(Response.Status.OK, "application/javascript", js);
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to return JS script");
-            return newFixedLengthResponse("Failed to load JS");
+            return buffer.toByteArray();
+        }
+    }
+
+    private Response serveStreamClients() {
+        StringBuilder body = new StringBuilder();
+        for (FrameBroadcaster.FrameSink sink : broadcaster.getSinks()) {
+            if (!(sink instanceof MJPEGPartStream)) continue;
+            MJPEGPartStream stream = (MJPEGPartStream) sink;
+            long interval = stream.getMinIntervalMillis();
+            body.append("client=").append(stream.getClientName())
+                    .append(" fps=").append(interval > 0 ? Long.toString(1000 / interval) : "max")
+                    .append(" delivered=").append(stream.getDeliveredFrames())
+                    .append(" dropped=").append(stream.getDroppedFrames())
+                    .append('\n');
         }
+        return newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, body.toString());
     }
 
-    private Response serveHTMLPage(IHTTPSession session) {
-    try {
-        InputStream htmlStream = streamableContext.getContext().getResources().openRawResource(R.raw.mjpeg_page);
-        int size = htmlStream.available();
-        byte[] buffer = new byte[size];
-        htmlStream.read(buffer);
-        String html = new String(buffer);
-        htmlStream.close();
-        return newFixedLengthResponse(Response.Status.OK, "text/html", html);
-    } catch (IOException e) {
-        Log.e(TAG, "Failed to read HTML page: " + e.getMessage());
-        return newFixedLengthResponse("Failed to load page");
+    private Response serveSnapshot(IHTTPSession session) {
+        snapshotDemandUntilMs = System.currentTimeMillis() + SNAPSHOT_DEMAND_MS;
+        if (broadcaster.getLatest() == null) {
+            try {
+                setLatestFrame(null);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load placeholder frame: " + e.getMessage());
+                return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "No frame available");
+            }
+        }
+
+        // ETag is the frame sequence, so an unchanged frame is never downloaded twice
+        long knownSequence = parseETag(session.getHeaders().get("if-none-match"));
+        long waitMillis = Math.min(getIntParameter(session, "wait", 0), MAX_SNAPSHOT_WAIT_MS);
+        Frame frame = broadcaster.getLatest();
+        if (waitMillis > 0) {
+            // Without an ETag the caller wants the next frame, with one anything newer than it has
+            frame = awaitFrameAfter(knownSequence >= 0 ? knownSequence : frame.getSequence(), waitMillis);
+        }
+
+        String etag = "\"" + frame.getSequence() + "\"";
+        Response response;
+        if (frame.getSequence() == knownSequence) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, "image/jpeg", "");
+        } else {
+            byte[] data = frame.getData();
+            response = newFixedLengthResponse(Response.Status.OK, "image/jpeg", new ByteArrayInputStream(data), data.length);
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
     }
-   }
 
-   private Response serveCSS() {
+    private static long parseETag(String header) {
+        if (header == null) return -1;
         try {
-            InputStream cssStream = streamableContext.getContext().getResources().openRawResource(
-                    streamableContext.getContext().getResources().getIdentifier("mjpeg_style", "raw", streamableContext.getContext().getPackageName()));
-            ByteArrayOutputStream baoStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int read;
-
-            while ((read = cssStream.read(buffer)) != -1) {
-                baoStream.write(buffer, 0, read);
+            return Long.parseLong(header.replace("W/", "").replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Long-poll until a frame newer than afterSequence is published or the wait runs out
+    private Frame awaitFrameAfter(long afterSequence, long waitMillis) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        synchronized (frameLock) {
+            Frame frame = broadcaster.getLatest();
+            long remaining;
+            while (frame.getSequence() <= afterSequence && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    frameLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                frame = broadcaster.getLatest();
             }
+            return frame;
+        }
+    }
 
-            String css = baoStream.toString("UTF-8");
-            cssStream.close();
-            baoStream.close();
-            return newFixedLengthResponse(Response.Status.OK,"text/css", css);
-        } catch(IOException e) {
-            Log.e(TAG, "Failed to return CSS style" + e.getMessage());
-            return newFixedLengthResponse("Failed to load CSS");
+    // Long-lived responses each pin a worker thread, so their number is capped
+    private Response serveLimitedStream(Supplier<Response> streamFactory) {
+        if (asyncRunner.isSaturated() || !StreamSlot.tryReserve(activeStreams, maxStreams)) {
+            Response response = newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Server busy");
+            response.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            return response;
         }
-   }
+        Response response = streamFactory.get();
+        response.setData(new StreamSlot(response.getData(), activeStreams));
+        return response;
+    }
 
-    private Response serveMJPEGStream() {
-        final PipedOutputStream pipedOut = new PipedOutputStream();
-        final PipedInputStream pipedIn;
+    private Response serveServerStats() {
+        String body = "workers_active=" + asyncRunner.getActiveCount()
+                + "\nworkers_max=" + asyncRunner.getMaxThreads()
+                + "\nqueued=" + asyncRunner.getQueuedCount()
+                + "\nrejected=" + asyncRunner.getRejectedCount()
+                + "\nstreams_active=" + activeStreams.get()
+                + "\nstreams_max=" + maxStreams + "\n";
+        return newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, body);
+    }
+
+    // /clip?seconds=N exports the most recent N seconds of the ring buffer as an MJPEG AVI
+    private Response serveClip(IHTTPSession session) {
+        FrameRingBuffer clip = clipBuffer;
+        if (clip == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Clip recording is disabled");
+        }
+        int seconds = Math.max(1, getIntParameter(session, "seconds", DEFAULT_CLIP_SECONDS));
+        long now = System.currentTimeMillis();
+        int capacity = clip.getMaxFrames();
+        long[] sequences = new long[capacity];
+        int[] lengths = new int[capacity];
+        long[] timestamps = new long[capacity];
+        int count = clip.collect(now - seconds * 1000L, sequences, lengths, timestamps);
+        if (count == 0) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "No recorded frames");
+        }
+
+        AviClipStream avi = new AviClipStream(clip, sequences, lengths, timestamps, count);
+        Response response = newFixedLengthResponse(Response.Status.OK, "video/x-msvideo", avi, avi.getLength());
+        response.addHeader("Content-Disposition", "attachment; filename=\"clip-" + now + ".avi\"");
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private Response serveRecordingList() {
+        SegmentRecorder recorder = segmentRecorder;
+        if (recorder == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Recording is disabled");
+        }
+        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", recorder.toJson());
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    // /recordings/<segment>?from=<epoch ms> plays a segment starting at the first frame captured at or after from
+    private Response serveRecording(IHTTPSession session, String name) {
+        SegmentRecorder recorder = segmentRecorder;
+        File segment = recorder != null ? recorder.getSegmentFile(name) : null;
+        File indexFile = recorder != null ? recorder.getIndexFile(name) : null;
+        if (segment == null || indexFile == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "No such recording");
+        }
         try {
-            pipedIn = new PipedInputStream(pipedOut, 64 * 1024); // 64KB buffer
+            long offset = 0;
+            long from = getLongParameter(session, "from", 0);
+            if (from > 0) {
+                SegmentIndex index = SegmentIndex.open(indexFile);
+                int entry = index.search(from);
+                if (entry == index.getCount()) {
+                    return newFixedLengthResponse(Response.Status.RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, "No frames after " + from);
+                }
+                offset = index.getOffset(entry);
+            }
+            return serveFile(session, segment, offset, "multipart/x-mixed-replace; boundary=frame");
         } catch (IOException e) {
-            Log.e(TAG, "Failed to create pipe: " + e.getMessage());
-            return newFixedLengthResponse("Failed to open stream");
+            Log.e(TAG, "Failed to open recording " + name + ": " + e.getMessage());
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_PLAINTEXT, "Failed to open recording");
         }
+    }
+
+    /*
+     * Serves the file from offset onwards, honouring a Range header within that part.
+     * The body is read through the file channel in NanoHTTPD's own buffer, so large
+     * files and parallel downloads do not add heap pressure.
+     */
+    private Response serveFile(IHTTPSession session, File file, long offset, String mimeType) throws IOException {
+        long entityLength = Math.max(0, file.length() - offset);
+        ByteRange range;
+        try {
+            range = ByteRange.parse(session.getHeaders().get("range"), entityLength);
+        } catch (IllegalArgumentException e) {
+            Response response = newFixedLengthResponse(Response.Status.RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, e.getMessage());
+            response.addHeader("Content-Range", "bytes */" + entityLength);
+            return response;
+        }
+
+        Response response;
+        if (range == null) {
+            response = newFixedLengthResponse(Response.Status.OK, mimeType,
+                    new FileRangeStream(file, offset, entityLength), entityLength);
+        } else {
+            response = newFixedLengthResponse(Response.Status.PARTIAL_CONTENT, mimeType,
+                    new FileRangeStream(file, offset + range.getStart(), range.getLength()), range.getLength());
+            response.addHeader("Content-Range", range.toContentRange(entityLength));
+        }
+        response.addHeader("Accept-Ranges", "bytes");
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    // ?since=<id> only returns events newer than the given one
+    private Response serveMotion(IHTTPSession session) {
+        StringBuilder body = new StringBuilder(256);
+        body.append("{\"motion\":").append(motionDetector.isMotion())
+                .append(",\"changedCells\":").append(motionDetector.getChangedCells())
+                .append(",\"cells\":").append(MotionDetector.getCellCount())
+                .append(",\"events\":");
+        motionDetector.appendEventsJson(body, getIntParameter(session, "since", 0));
+        body.append('}');
+        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", body.toString());
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private Response serveCameraList() {
+        String primary = primaryCameraId;
+        StringBuilder json = new StringBuilder("[");
+        if (primary != null) appendCamera(json, primary, true, broadcaster.getSubscriberCount());
+        for (Map.Entry<String, FrameBroadcaster> entry : cameraBroadcasters.entrySet()) {
+            appendCamera(json, entry.getKey(), false, entry.getValue().getSubscriberCount());
+        }
+        json.append(']');
+        Response response = newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private void appendCamera(StringBuilder json, String cameraId, boolean primary, int clients) {
+        if (json.length() > 1) json.append(',');
+        // Camera ids are Camera2 ids, plain digits or short names without quotes
+        json.append("{\"id\":\"").append(cameraId)
+                .append("\",\"url\":\"").append(CAMERA_STREAM_PREFIX).append(cameraId)
+                .append("\",\"primary\":").append(primary)
+                .append(",\"timeSliced\":").append(timeSlicedCameras.contains(cameraId))
+                .append(",\"clients\":").append(clients).append('}');
+    }
+
+    // Server wall clock, the latency page uses it to estimate the browser's clock offset
+    private Response serveTime() {
+        Response response = newFixedLengthResponse(Response.Status.OK, MIME_PLAINTEXT, Long.toString(System.currentTimeMillis()));
+        response.addHeader("Cache-Control", "no-store");
+        return response;
+    }
+
+    private Response serveMetrics() {
+        StringBuilder body = new StringBuilder(4096);
+        PipelineMetrics.render(body);
+        PipelineMetrics.renderGauge(body, "remotecamera_active_clients", "Connected MJPEG, variant and H.264 stream clients", getClientCount());
+        PipelineMetrics.renderGauge(body, "remotecamera_event_clients", "Connected /events clients", eventClients.size());
+        PipelineMetrics.renderGauge(body, "remotecamera_streams_active", "Long-lived responses holding a stream slot", activeStreams.get());
+        PipelineMetrics.renderGauge(body, "remotecamera_fps", "Full resolution frames published per second", currentFps);
+        return newFixedLengthResponse(Response.Status.OK, "text/plain; version=0.0.4; charset=utf-8", body.toString());
+    }
+
+    private Response serveEvents() {
+        EventStream client = new EventStream(EVENT_KEEPALIVE_MS);
+        String status;
+        synchronized (statusLock) {
+            status = lastStatus;
+        }
+        if (!status.isEmpty()) client.offer(EventStream.encode("status", status));
+        eventClients.add(client);
+        publishStatus();
 
-        // Start a background thread to continuously write MJPEG frames
-        new Thread(() -> {
+        Response response = newChunkedResponse(Response.Status.OK, "text/event-stream", client);
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private Response serveH264Stream() {
+        Response response = newChunkedResponse(Response.Status.OK, "video/h264", h264Hub.addClient());
+        response.addHeader("Access-Control-Allow-Origin", "*");
+        response.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        return response;
+    }
+
+    private Response serveMJPEGStream(IHTTPSession session) {
+        if (broadcaster.getLatest() == null) {
             try {
-                while (true) {
-                    byte[] frameToSend;
-                    synchronized(frameLock) {
-                        frameToSend = latestFrame != null ? latestFrame : getNoCameraImage();
-                    }
-                    // Write MJPEG frame
-                    pipedOut.write(("--frame\r\n").getBytes());
-                    pipedOut.write("Content-Type: image/jpeg\r\n\r\n".getBytes());
-                    pipedOut.write(frameToSend);
-                    pipedOut.write("\r\n".getBytes());
-                    pipedOut.flush();
-                    Thread.sleep(33); // ~30 FPS
-                }
-            } catch (IOException | InterruptedException e) {
-                Log.d(TAG, "Client disconnected");
-                try { pipedOut.close(); } catch (IOException ex) { /* ignore */ }
+                setLatestFrame(null);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load placeholder frame: " + e.getMessage());
+                return newFixedLengthResponse("Failed to open stream");
             }
-        }).start();
+        }
+
+        // ?w= and ?q= select a shared downscaled variant instead of the full resolution feed
+        FrameBroadcaster source = broadcaster;
+        int width = getIntParameter(session, "w", 0);
+        int quality = getIntParameter(session, "q", 0);
+        if (width > 0 || quality > 0) {
+            // Snap widths so near-identical requests share one variant
+            width = width > 0 ? Math.max(VARIANT_WIDTH_STEP, width / VARIANT_WIDTH_STEP * VARIANT_WIDTH_STEP) : Integer.MAX_VALUE;
+            quality = quality > 0 ? Math.min(quality, 100) : DEFAULT_VARIANT_QUALITY;
+            source = variantCache.acquire(width, quality);
+            if (source == null) {
+                return newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, MIME_PLAINTEXT, "Too many stream variants");
+            }
+            if (source.getLatest() == null && !streamableContext.isStreaming()) {
+                source.publish(broadcaster.getLatest().getData());
+            }
+        }
+
+        return newPartStreamResponse(session, source);
+    }
+
+    private Response serveCameraStream(IHTTPSession session, String cameraId) {
+        if (cameraId.equals(primaryCameraId)) return serveMJPEGStream(session);
+        FrameBroadcaster camera = cameraBroadcasters.get(cameraId);
+        if (camera == null) {
+            return newFixedLengthResponse(Response.Status.NOT_FOUND, MIME_PLAINTEXT, "Unknown camera");
+        }
+        if (camera.getLatest() == null) {
+            try {
+                camera.publish(getNoCameraImage());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load placeholder frame: " + e.getMessage());
+                return newFixedLengthResponse("Failed to open stream");
+            }
+        }
+        return newPartStreamResponse(session, camera);
+    }
+
+    private Response newPartStreamResponse(IHTTPSession session, FrameBroadcaster source) {
+        // NanoHTTPD pulls frames straight from the shared buffers, no writer thread or pipe per client
+        MJPEGPartStream partStream = new MJPEGPartStream(session.getRemoteIpAddress(),
+                STREAM_KEEPALIVE_MS, getIntParameter(session, "fps", 0));
+        source.subscribe(partStream);
+        publishStatus();
 
         Response response = newChunkedResponse(Response.Status.OK,
-                "multipart/x-mixed-replace; boundary=frame", pipedIn);
+                "multipart/x-mixed-replace; boundary=frame", partStream);
         response.addHeader("Access-Control-Allow-Origin", "*");
         response.addHeader("Cache-Control", "no-cache, no-store, must-revalidate");
         response.addHeader("Pragma", "no-cache");
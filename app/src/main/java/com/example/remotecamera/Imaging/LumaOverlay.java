@@ -0,0 +1,109 @@
+package com.example.remotecamera.Imaging;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.Arrays;
+
+/*
+ * Burns text into an NV21 frame before it is JPEG encoded.
+ * The text is rasterised into a small luma/alpha mask only when it changes; every frame
+ * just blends that mask into the Y plane and neutralises the chroma underneath it.
+ */
+public class LumaOverlay {
+
+    private static final int LEFT = 5;
+    private static final int FIRST_BASELINE = 20;
+    private static final int LINE_SPACING = 15;
+    private static final int PADDING = 4;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private String[] lines = new String[0];
+    private byte[] maskLuma = new byte[0];
+    private byte[] maskAlpha = new byte[0];
+    private int maskWidth = 0;
+    private int maskHeight = 0;
+
+    public LumaOverlay() {
+        paint.setTypeface(Typeface.DEFAULT_BOLD);
+    }
+
+    public void setText(String... newLines) {
+        if (Arrays.equals(lines, newLines)) return;
+        lines = newLines.clone();
+        renderMask();
+    }
+
+    private void renderMask() {
+        float textWidth = 0;
+        for (String line : lines) {
+            textWidth = Math.max(textWidth, paint.measureText(line));
+        }
+        if (textWidth == 0) {
+            maskWidth = 0;
+            maskHeight = 0;
+            return;
+        }
+        int width = LEFT + (int) Math.ceil(textWidth) + PADDING;
+        int height = FIRST_BASELINE + (lines.length - 1) * LINE_SPACING + PADDING;
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        // Outline
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(2);
+        paint.setColor(Color.BLACK);
+        for (int i = 0; i < lines.length; i++) {
+            canvas.drawText(lines[i], LEFT, FIRST_BASELINE + i * LINE_SPACING, paint);
+        }
+        // Text fill
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            canvas.drawText(lines[i], LEFT, FIRST_BASELINE + i * LINE_SPACING, paint);
+        }
+
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        maskLuma = new byte[pixels.length];
+        maskAlpha = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            // Text is only black or white, so any channel gives its luma
+            maskLuma[i] = (byte) Color.red(pixel);
+            maskAlpha[i] = (byte) Color.alpha(pixel);
+        }
+        maskWidth = width;
+        maskHeight = height;
+    }
+
+    public void apply(byte[] nv21, int frameWidth, int frameHeight) {
+        int width = Math.min(maskWidth, frameWidth);
+        int height = Math.min(maskHeight, frameHeight);
+        int chromaOffset = frameWidth * frameHeight;
+
+        for (int row = 0; row < height; row++) {
+            int maskRow = row * maskWidth;
+            int frameRow = row * frameWidth;
+            for (int col = 0; col < width; col++) {
+                int alpha = maskAlpha[maskRow + col] & 0xFF;
+                if (alpha == 0) continue;
+                int y = nv21[frameRow + col] & 0xFF;
+                int luma = maskLuma[maskRow + col] & 0xFF;
+                nv21[frameRow + col] = (byte) ((y * (255 - alpha) + luma * alpha) / 255);
+
+                // Pull the shared 2x2 chroma sample towards grey so the text is not tinted
+                if ((row & 1) == 0 && (col & 1) == 0) {
+                    int uv = chromaOffset + (row >> 1) * frameWidth + col;
+                    nv21[uv] = (byte) (((nv21[uv] & 0xFF) * (255 - alpha) + 128 * alpha) / 255);
+                    nv21[uv + 1] = (byte) (((nv21[uv + 1] & 0xFF) * (255 - alpha) + 128 * alpha) / 255);
+                }
+            }
+        }
+    }
+}
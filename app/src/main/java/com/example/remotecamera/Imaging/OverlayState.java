@@ -0,0 +1,86 @@
+package com.example.remotecamera.Imaging;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.icu.text.SimpleDateFormat;
+import android.os.BatteryManager;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Date;
+import java.util.Locale;
+
+/*
+ * Precomputed overlay text for the frame loop.
+ * Battery state comes from a single ACTION_BATTERY_CHANGED subscription instead of a sticky
+ * broadcast query per frame, and the timestamp is only reformatted when the second changes.
+ */
+public class OverlayState {
+
+    private final Context context;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final Date date = new Date();
+    private volatile String batteryText = "BAT:-1% ";
+    private boolean registered = false;
+
+    // Guarded by this, every camera's frame loop reads the date text
+    private String dateText = "";
+    private long dateSecond = -1;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            updateBattery(intent);
+        }
+    };
+
+    public OverlayState(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public void start() {
+        if (registered) return;
+        Intent batteryStatus = ContextCompat.registerReceiver(context, batteryReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+        registered = true;
+        if (batteryStatus != null) updateBattery(batteryStatus);
+    }
+
+    public void stop() {
+        if (!registered) return;
+        context.unregisterReceiver(batteryReceiver);
+        registered = false;
+    }
+
+    // Called concurrently by the overlay stage and the secondary camera executors
+    public synchronized String getDateText() {
+        long now = System.currentTimeMillis();
+        long second = now / 1000;
+        if (second != dateSecond) {
+            date.setTime(now);
+            dateText = dateFormat.format(date);
+            dateSecond = second;
+        }
+        return dateText;
+    }
+
+    public String getBatteryText() {
+        return batteryText;
+    }
+
+    private void updateBattery(Intent batteryStatus) {
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int percent = -1;
+        if (level != -1 && scale != -1) {
+            percent = (int) ((level * 100f) / (float) scale);
+        }
+        String chargingStatus = "";
+        if (batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1) > 0) {
+            chargingStatus = "Plugged";
+        }
+        batteryText = "BAT:" + percent + "%" + " " + chargingStatus;
+    }
+}
@@ -2,6 +2,8 @@ package com.example.remotecamera.Interface;
 
 import android.content.Context;
 
+import com.example.remotecamera.Services.StreamProfile;
+
 public interface IStreamable {
 
     Context getContext();
@@ -11,4 +13,8 @@ public interface IStreamable {
 
 
     boolean getFlashlightState();
+
+    StreamProfile getStreamProfile();
+
+    void setStreamProfile(StreamProfile profile);
 }
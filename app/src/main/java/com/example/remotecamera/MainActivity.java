@@ -21,7 +21,8 @@ import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.content.ContextCompat;
 
 
-import com.example.remotecamera.ServiceCallback.UIPublisher;
+import com.example.remotecamera.ServiceCallback.EventBus;
+import com.example.remotecamera.ServiceCallback.StreamStateEvent;
 import com.example.remotecamera.Services.MJPEGWebService;
 import com.example.remotecamera.databinding.ActivityMainBinding;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -43,7 +44,7 @@ public class MainActivity extends AppCompatActivity {
 
     private ProcessCameraProvider cameraProvider;
     private boolean isMinimized = false;
-    private final UIPublisher uiPublisher = UIPublisher.getUIPublisherInstance();
+    private final EventBus eventBus = EventBus.getInstance();
 
     private final ActivityResultLauncher<String[]> activityResultLauncher =
             registerForActivityResult(
@@ -93,7 +94,8 @@ public class MainActivity extends AppCompatActivity {
             startCameraPreview();
         }
 
-        uiPublisher.subscribe(this::updateUI);
+        // Ends with the activity, so nothing is left behind when it is destroyed
+        eventBus.subscribe(this, StreamStateEvent.class, event -> updateUI());
         // Button click to toggle streaming service
         viewBinding.streamButton.setOnClickListener(v -> {
             if (CameraStreamService.isStreaming) {
@@ -109,7 +111,6 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         isMinimized = true;
-        uiPublisher.unsubscribe(this::updateUI);
         if (CameraStreamService.isStreaming) {
             stopCameraService();
             startCameraService();
@@ -163,7 +164,6 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         isMinimized = false;
         updateUI();
-        uiPublisher.subscribe(this::updateUI);
         // Stop and start camera stream service to enable preview upon maximizing app again
         if (CameraStreamService.isStreaming) {
             stopCameraService();
@@ -0,0 +1,168 @@
+package com.example.remotecamera.ServiceCallback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/*
+ * Process-wide typed event bus between the services, the HTTP server and the UI.
+ * publish() never blocks and never runs a listener itself: every subscription delivers on its
+ * own executor, one event at a time and in publish order. State events replace each other
+ * while still undelivered, so a burst only reaches a slow subscriber as its latest state.
+ * Subscriptions can also hold their owner weakly or end with a lifecycle.
+ */
+public final class EventBus {
+
+    // Events describing a current state rather than something that happened; only the newest one matters
+    public interface StateEvent {}
+
+    private static final String TAG = "EventBus";
+    private static final EventBus instance = new EventBus();
+
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+    private final Executor mainExecutor = new Handler(Looper.getMainLooper())::post;
+
+    private EventBus() {}
+
+    public static EventBus getInstance() {
+        return instance;
+    }
+
+    public <T> Subscription<T> subscribe(Class<T> type, Executor executor, Consumer<? super T> listener) {
+        Subscription<T> subscription = new Subscription<>(type, executor, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    // The listener must not capture the owner itself, it receives it on every event instead
+    public <O, T> Subscription<T> subscribeWeak(O owner, Class<T> type, Executor executor,
+                                                BiConsumer<? super O, ? super T> listener) {
+        WeakReference<O> ownerRef = new WeakReference<>(owner);
+        AtomicReference<Subscription<T>> self = new AtomicReference<>();
+        self.set(subscribe(type, executor, event -> {
+            O current = ownerRef.get();
+            if (current == null) {
+                self.get().close();
+                return;
+            }
+            listener.accept(current, event);
+        }));
+        return self.get();
+    }
+
+    /*
+     * Delivers on the main thread while the owner is at least started and ends when it is
+     * destroyed. The newest state event missed while stopped is delivered on the next start.
+     * Must be called on the main thread.
+     */
+    public <T> Subscription<T> subscribe(LifecycleOwner owner, Class<T> type, Consumer<? super T> listener) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        AtomicReference<T> missed = new AtomicReference<>();
+        Subscription<T> subscription = subscribe(type, mainExecutor, event -> {
+            if (lifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                listener.accept(event);
+            } else if (event instanceof StateEvent) {
+                missed.set(event);
+            }
+        });
+        lifecycle.addObserver((LifecycleEventObserver) (source, event) -> {
+            if (event == Lifecycle.Event.ON_START) {
+                T last = missed.getAndSet(null);
+                if (last != null) listener.accept(last);
+            } else if (event == Lifecycle.Event.ON_DESTROY) {
+                subscription.close();
+            }
+        });
+        return subscription;
+    }
+
+    // Safe from any thread, including camera and HTTP worker threads
+    public void publish(Object event) {
+        for (Subscription<?> subscription : subscriptions) {
+            subscription.post(event);
+        }
+    }
+
+    public final class Subscription<T> {
+        private final Class<T> type;
+        private final Executor executor;
+        private final Consumer<? super T> listener;
+        private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<T> latestState = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+
+        private Subscription(Class<T> type, Executor executor, Consumer<? super T> listener) {
+            this.type = type;
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        private void post(Object event) {
+            if (closed || !type.isInstance(event)) return;
+            T typed = type.cast(event);
+            if (typed instanceof StateEvent) {
+                latestState.set(typed);
+            } else {
+                queue.add(typed);
+            }
+            schedule();
+        }
+
+        // At most one drain is queued or running, so the listener never runs concurrently with itself
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                close();
+            }
+        }
+
+        private void drain() {
+            try {
+                T event;
+                while (!closed && (event = queue.poll()) != null) {
+                    deliver(event);
+                }
+                T state = latestState.getAndSet(null);
+                if (state != null && !closed) deliver(state);
+            } finally {
+                scheduled.set(false);
+            }
+            // Events published while the flag was still set would otherwise wait for the next publish
+            if (!closed && (!queue.isEmpty() || latestState.get() != null)) schedule();
+        }
+
+        private void deliver(T event) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Subscriber failed on " + event.getClass().getSimpleName(), e);
+            }
+        }
+
+        public void close() {
+            closed = true;
+            queue.clear();
+            latestState.set(null);
+            subscriptions.remove(this);
+        }
+    }
+}
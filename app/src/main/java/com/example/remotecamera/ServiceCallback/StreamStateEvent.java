@@ -0,0 +1,15 @@
+package com.example.remotecamera.ServiceCallback;
+
+/* Published by CameraStreamService whenever streaming starts or stops */
+public final class StreamStateEvent implements EventBus.StateEvent {
+
+    private final boolean streaming;
+
+    public StreamStateEvent(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+}
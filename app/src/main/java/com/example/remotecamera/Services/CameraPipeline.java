@@ -0,0 +1,108 @@
+package com.example.remotecamera.Services;
+
+import androidx.camera.core.Camera;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+
+import com.example.remotecamera.Imaging.LumaOverlay;
+import com.example.remotecamera.Imaging.NV21Converter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Capture state of one camera.
+ * Every camera analyzes on its own single thread executor with its own converter and overlay
+ * buffers, so a slow encode on one camera never delays or starves the frames of another.
+ */
+class CameraPipeline {
+
+    private final String cameraId;
+    private final CameraSelector selector;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private ImageAnalysis.Analyzer analyzer;
+    private final NV21Converter converter = new NV21Converter();
+    private final LumaOverlay overlay = new LumaOverlay();
+
+    // Only touched on the main thread
+    private Camera camera;
+
+    // Only touched by the executor
+    private long minFrameIntervalNs = 0;
+    private long lastFrameTimestampNs = 0;
+    private int jpegQuality = StreamProfile.defaults().getJpegQuality();
+
+    CameraPipeline(String cameraId, CameraSelector selector, ExecutorService executor) {
+        this.cameraId = cameraId;
+        this.selector = selector;
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    CameraPipeline(String cameraId, CameraSelector selector) {
+        this.cameraId = cameraId;
+        this.selector = selector;
+        this.executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Camera-" + cameraId));
+        this.ownsExecutor = true;
+    }
+
+    String getCameraId() {
+        return cameraId;
+    }
+
+    CameraSelector getSelector() {
+        return selector;
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    ImageAnalysis.Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    void setAnalyzer(ImageAnalysis.Analyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    NV21Converter getConverter() {
+        return converter;
+    }
+
+    LumaOverlay getOverlay() {
+        return overlay;
+    }
+
+    Camera getCamera() {
+        return camera;
+    }
+
+    void setCamera(Camera camera) {
+        this.camera = camera;
+    }
+
+    // Runs on the executor, like the analyzer reading these values
+    void configure(long intervalNs, int quality) {
+        executor.execute(() -> {
+            minFrameIntervalNs = intervalNs - intervalNs / 10;
+            jpegQuality = quality;
+        });
+    }
+
+    // Enforces the target rate, the AE range is only a hint
+    boolean acceptFrame(long timestampNs) {
+        if (timestampNs - lastFrameTimestampNs < minFrameIntervalNs) return false;
+        lastFrameTimestampNs = timestampNs;
+        return true;
+    }
+
+    int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    void shutdown() {
+        if (ownsExecutor) executor.shutdown();
+    }
+}
@@ -10,42 +10,65 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.ImageFormat;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.YuvImage;
-import android.icu.text.SimpleDateFormat;
-import android.os.BatteryManager;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Range;
+import android.util.Size;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
 import androidx.annotation.RequiresApi;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.Camera2Interop;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.AspectRatio;
 import androidx.camera.core.Camera;
+import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ConcurrentCamera;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
-import com.example.remotecamera.ServiceCallback.UIPublisher;
+import com.example.remotecamera.Imaging.LumaOverlay;
+import com.example.remotecamera.Imaging.NV21Converter;
+import com.example.remotecamera.Imaging.OverlayState;
+import com.example.remotecamera.Metrics.PipelineMetrics;
+import com.example.remotecamera.Pipeline.FramePipeline;
+import com.example.remotecamera.ServiceCallback.EventBus;
+import com.example.remotecamera.ServiceCallback.StreamStateEvent;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.Date;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -54,7 +77,20 @@ public class CameraStreamService extends Service {
 
     private static final String TAG = "CameraFGService";
     private static final String CHANNEL_ID = "CameraForegroundChannel";
+    // Without viewers only one frame per interval is processed to keep the placeholder fresh
+    private static final long IDLE_KEEPALIVE_INTERVAL_MS = 5_000;
+    // After this long without viewers the primary camera is rebound at the idle sensor rate
+    private static final long IDLE_CAPTURE_DELAY_MS = 10_000;
+    private static final int IDLE_FRAME_RATE = 5;
+    private static final long WAKE_LOCK_TIMEOUT_MS = 60_000;
+    private static final long WAKE_LOCK_RENEW_MS = 30_000;
+    // Static scenes are only encoded and published once per interval
+    private static final long STATIC_FRAME_INTERVAL_NS = 1_000_000_000L;
+    // How long each camera group keeps the sensor pipeline when not all cameras can capture at once
+    private static final long CAMERA_SLICE_MS = 3_000;
     private PowerManager.WakeLock wakeLock;
+    private long wakeLockAcquiredMs = 0;
+    private long lastKeepAliveFrameMs = 0;
     private ExecutorService cameraExecutor;
     private ProcessCameraProvider cameraProvider;
     private CameraLifeCycleOwner lifeCycleOwner;
@@ -65,7 +101,60 @@ public class CameraStreamService extends Service {
     private boolean isBound = false;
     private boolean isOn = false;
 
-    private final UIPublisher uiPublisher = UIPublisher.getUIPublisherInstance();
+    private final EventBus eventBus = EventBus.getInstance();
+    private final LumaOverlay overlay = new LumaOverlay();
+    private final NV21Converter nv21Converter = new NV21Converter();
+    private OverlayState overlayState;
+    private StreamProfile streamProfile = StreamProfile.defaults();
+    // Only touched by the analyzer
+    private long minFrameIntervalNs = 0;
+    private long lastFrameTimestampNs = 0;
+    private long lastProcessedTimestampNs = 0;
+    private long inactiveSinceMs = 0;
+    private boolean idleRequested = false;
+    // Read by the encode workers
+    private volatile int jpegQuality = StreamProfile.defaults().getJpegQuality();
+    // Overlay, encode and publish of the primary camera run here, off the analyzer thread
+    private FramePipeline framePipeline;
+    private final FramePipeline.Stages frameStages = new FramePipeline.Stages() {
+        @Override
+        public void overlay(FramePipeline.FrameJob job) {
+            // Overlay goes into the raw frame so the JPEG is only encoded once
+            drawInformation(job.getData(), job.getWidth(), job.getHeight());
+            MJPEGWebService webService = mjpegWebService;
+            if (webService != null) {
+                webService.sendRawFrameToServer(job.getData(), job.getWidth(), job.getHeight(), job.getTimestampNs() / 1000);
+            }
+        }
+
+        @Override
+        public byte[] encode(FramePipeline.FrameJob job) {
+            return convertYUVToJPEG(job.getData(), job.getWidth(), job.getHeight());
+        }
+
+        @Override
+        public void publish(FramePipeline.FrameJob job, byte[] jpeg) {
+            MJPEGWebService webService = mjpegWebService;
+            if (webService == null) return;
+            try {
+                webService.sendFrameToServer(jpeg, job.getCaptureMillis());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to update MJPEG frame", e);
+            }
+        }
+
+        @Override
+        public void onError(String stage, Throwable error) {
+            Log.e(TAG, "Frame pipeline " + stage + " stage failed", error);
+        }
+    };
+    // Cameras bound together, slot 0 holds the primary camera; only touched on the main thread
+    private final List<CameraPipeline> cameraPipelines = new ArrayList<>();
+    private final List<List<CameraPipeline>> cameraSlots = new ArrayList<>();
+    private int activeSlot = 0;
+    private boolean captureIdle = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable sliceRunnable = this::rotateCameraSlot;
     private final BroadcastReceiver flashlightReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -81,6 +170,17 @@ public class CameraStreamService extends Service {
         }
     };
 
+    private final BroadcastReceiver profileReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            try {
+                applyStreamProfile(StreamProfile.parse(getProfileValues(intent), streamProfile));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Rejected stream profile: " + e.getMessage());
+            }
+        }
+    };
+
     private Camera camera;
 
     public class CameraBinder extends Binder {
@@ -108,7 +208,8 @@ public class CameraStreamService extends Service {
             MJPEGWebService.WebBinder wb = (MJPEGWebService.WebBinder) service;
             mjpegWebService = wb.getService();
             isBound = true;
-
+            // The web service may have missed the status sent from onStartCommand
+            broadcastProfileStatus();
 
             // Start camera service
             startCameraStreaming();
@@ -129,17 +230,24 @@ public class CameraStreamService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
-        // Keep CPU awake
+        // Keep CPU awake, renewed by the analyzer only while clients are watching
         PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
         wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "MyApp::CameraWakeLock");
-        wakeLock.acquire(Long.MAX_VALUE);
+        wakeLock.setReferenceCounted(false);
+        renewWakeLock(SystemClock.elapsedRealtime());
 
         // Receiver
         IntentFilter filter = new IntentFilter("com.remotecamera.FLASHLIGHT_ACTION");
         registerReceiver(flashlightReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        registerReceiver(profileReceiver, new IntentFilter("com.remotecamera.PROFILE_ACTION"), Context.RECEIVER_NOT_EXPORTED);
+
+        // Overlay text is refreshed from battery broadcasts instead of per frame queries
+        overlayState = new OverlayState(this);
+        overlayState.start();
 
         // Executor
         cameraExecutor = Executors.newSingleThreadExecutor();
+        framePipeline = new FramePipeline(frameStages, FramePipeline.defaultEncodeWorkers());
         if (mjpegWebService != null) {
             try {
                 mjpegWebService.sendFrameToServer(null);
@@ -159,9 +267,14 @@ public class CameraStreamService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null) {
             isMinimized = intent.getBooleanExtra("isMinimized", false);
+            try {
+                applyStreamProfile(StreamProfile.parse(getProfileValues(intent), streamProfile));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Ignoring invalid stream profile: " + e.getMessage());
+            }
         }
         isStreaming = true;
-        uiPublisher.notifySubscribers();
+        eventBus.publish(new StreamStateEvent(true));
         Intent webServiceIntent = new Intent(this, MJPEGWebService.class);
         bindService(webServiceIntent, connection, Context.BIND_AUTO_CREATE);
         return START_REDELIVER_INTENT;
@@ -204,110 +317,462 @@ public class CameraStreamService extends Service {
     public void startStream() throws IOException {
         lifeCycleOwner = new CameraLifeCycleOwner();
         lifeCycleOwner.start();
-        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder().build();
-        imageAnalysis.setAnalyzer(cameraExecutor, image -> {
-            byte[] jpeg = convertYUVToJPEG(image);
-            try {
-                mjpegWebService.sendFrameToServer(drawInformation(jpeg));
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to update MJPEG frame", e);
+        setUpCameras();
+        bindUseCases();
+        mainHandler.postDelayed(sliceRunnable, CAMERA_SLICE_MS);
+    }
+
+    /*
+     * The back camera is the primary one behind /stream, motion, clips and recording; every other
+     * camera is served at /stream/{cameraId}. A camera the device can run concurrently with the
+     * primary one shares its slot, all others get a slot of their own and take turns.
+     */
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private void setUpCameras() {
+        for (CameraPipeline pipeline : cameraPipelines) {
+            pipeline.shutdown();
+        }
+        cameraPipelines.clear();
+        cameraSlots.clear();
+        activeSlot = 0;
+
+        List<CameraInfo> infos = cameraProvider.getAvailableCameraInfos();
+        List<CameraInfo> backCameras = CameraSelector.DEFAULT_BACK_CAMERA.filter(infos);
+        CameraInfo primaryInfo = !backCameras.isEmpty() ? backCameras.get(0) : infos.isEmpty() ? null : infos.get(0);
+        if (primaryInfo == null) {
+            Log.e(TAG, "No camera available");
+            return;
+        }
+        String primaryId = Camera2CameraInfo.from(primaryInfo).getCameraId();
+        CameraPipeline primary = new CameraPipeline(primaryId, primaryInfo.getCameraSelector(), cameraExecutor);
+        primary.setAnalyzer(this::analyze);
+        cameraPipelines.add(primary);
+        List<CameraPipeline> primarySlot = new ArrayList<>();
+        primarySlot.add(primary);
+        cameraSlots.add(primarySlot);
+
+        String partnerId = findConcurrentPartner(primaryId);
+        for (CameraInfo info : infos) {
+            String cameraId = Camera2CameraInfo.from(info).getCameraId();
+            if (cameraId.equals(primaryId)) continue;
+            CameraPipeline pipeline = new CameraPipeline(cameraId, info.getCameraSelector());
+            pipeline.setAnalyzer(image -> analyzeCamera(pipeline, image));
+            cameraPipelines.add(pipeline);
+            if (cameraId.equals(partnerId)) {
+                primarySlot.add(pipeline);
+            } else {
+                cameraSlots.add(Collections.singletonList(pipeline));
             }
-            image.close();
-        });
+        }
+        reportCameras();
+    }
+
+    // A camera that can capture at the same time as the primary one, null without concurrent camera support
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private String findConcurrentPartner(String primaryId) {
+        for (List<CameraInfo> combination : cameraProvider.getAvailableConcurrentCameraInfos()) {
+            boolean hasPrimary = false;
+            String partnerId = null;
+            for (CameraInfo info : combination) {
+                String cameraId = Camera2CameraInfo.from(info).getCameraId();
+                if (cameraId.equals(primaryId)) {
+                    hasPrimary = true;
+                } else if (partnerId == null) {
+                    partnerId = cameraId;
+                }
+            }
+            if (hasPrimary && partnerId != null) return partnerId;
+        }
+        return null;
+    }
+
+    private void reportCameras() {
+        if (mjpegWebService == null || cameraPipelines.isEmpty()) return;
+        List<String> cameraIds = new ArrayList<>();
+        for (CameraPipeline pipeline : cameraPipelines) {
+            cameraIds.add(pipeline.getCameraId());
+        }
+        Set<String> timeSliced = new HashSet<>();
+        for (int i = 1; i < cameraSlots.size(); i++) {
+            for (CameraPipeline pipeline : cameraSlots.get(i)) {
+                timeSliced.add(pipeline.getCameraId());
+            }
+        }
+        mjpegWebService.setCameras(cameraPipelines.get(0).getCameraId(), cameraIds, timeSliced);
+    }
+
+    // Hands the sensor pipeline to the next slot with viewers; slot 0 always takes part in the rotation
+    private void rotateCameraSlot() {
+        if (cameraSlots.size() > 1 && cameraProvider != null && mjpegWebService != null) {
+            int next = activeSlot;
+            for (int i = 1; i <= cameraSlots.size(); i++) {
+                int candidate = (activeSlot + i) % cameraSlots.size();
+                if (candidate == 0 || hasViewers(cameraSlots.get(candidate))) {
+                    next = candidate;
+                    break;
+                }
+            }
+            if (next != activeSlot) bindSlot(next);
+        }
+        mainHandler.postDelayed(sliceRunnable, CAMERA_SLICE_MS);
+    }
+
+    private boolean hasViewers(List<CameraPipeline> slot) {
+        for (CameraPipeline pipeline : slot) {
+            if (mjpegWebService.hasCameraSubscribers(pipeline.getCameraId())) return true;
+        }
+        return false;
+    }
+
+    // Rebinds the camera with the new profile when it differs from the active one
+    private void applyStreamProfile(StreamProfile profile) {
+        boolean changed = !profile.equals(streamProfile);
+        streamProfile = profile;
+        if (changed && cameraProvider != null && lifeCycleOwner != null) {
+            Log.d(TAG, "Rebinding camera with profile " + profile);
+            bindUseCases();
+        }
+        broadcastProfileStatus();
+    }
 
+    private void broadcastProfileStatus() {
+        Intent statusIntent = new Intent("com.remotecamera.PROFILE_STATUS");
+        statusIntent.setPackage(getPackageName());
+        putProfile(statusIntent, streamProfile);
+        sendBroadcast(statusIntent);
+    }
 
-        // If activity is stopping, remove preview use case
-        CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
+    private void bindUseCases() {
+        if (!cameraSlots.isEmpty()) bindSlot(activeSlot);
+    }
+
+    // Binds the cameras of one slot, more than one camera means concurrent capture
+    private void bindSlot(int index) {
+        StreamProfile profile = streamProfile;
+        List<CameraPipeline> slot = cameraSlots.get(index);
         try {
             cameraProvider.unbindAll();
-            if (!isMinimized) {
-                Preview preview = new Preview.Builder().build();
-                preview.setSurfaceProvider(previewSurfaceProvider);
-                camera = cameraProvider.bindToLifecycle(
-                        lifeCycleOwner,
-                        cameraSelector,
-                        preview,
-                        imageAnalysis
-                );
+            for (CameraPipeline pipeline : cameraPipelines) {
+                pipeline.setCamera(null);
+            }
+            if (slot.size() > 1) {
+                List<ConcurrentCamera.SingleCameraConfig> configs = new ArrayList<>();
+                for (CameraPipeline pipeline : slot) {
+                    configs.add(new ConcurrentCamera.SingleCameraConfig(
+                            pipeline.getSelector(), buildUseCaseGroup(pipeline, profile), lifeCycleOwner));
+                }
+                List<Camera> cameras = cameraProvider.bindToLifecycle(configs).getCameras();
+                for (int i = 0; i < slot.size(); i++) {
+                    slot.get(i).setCamera(cameras.get(i));
+                }
             } else {
-                camera = cameraProvider.bindToLifecycle(
-                        lifeCycleOwner,
-                        cameraSelector,
-                        imageAnalysis
-                );
+                CameraPipeline pipeline = slot.get(0);
+                pipeline.setCamera(cameraProvider.bindToLifecycle(
+                        lifeCycleOwner, pipeline.getSelector(), buildUseCaseGroup(pipeline, profile)));
             }
+            activeSlot = index;
+            // The torch belongs to the primary camera, null while another slot has its turn
+            camera = cameraPipelines.get(0).getCamera();
+            // A fresh camera starts with the torch off
+            if (isOn) setFlashlight(true);
 
             isStreaming = true;
         } catch (Exception e) {
-            Log.e(TAG, "Camera binding failed", e);
+            if (slot.size() > 1) {
+                // Concurrent capture was advertised but refused, the cameras take turns instead
+                Log.e(TAG, "Concurrent camera binding failed, falling back to time slicing", e);
+                cameraSlots.set(index, Collections.singletonList(slot.get(0)));
+                for (int i = 1; i < slot.size(); i++) {
+                    cameraSlots.add(Collections.singletonList(slot.get(i)));
+                }
+                reportCameras();
+                bindSlot(index);
+            } else {
+                Log.e(TAG, "Camera binding failed", e);
+            }
         }
     }
 
-    public static void setPreviewSurfaceProvider(Preview.SurfaceProvider provider) {
-        previewSurfaceProvider = provider;
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private UseCaseGroup buildUseCaseGroup(CameraPipeline pipeline, StreamProfile profile) {
+        boolean primary = pipeline == cameraPipelines.get(0);
+        ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder()
+                .setResolutionSelector(buildResolutionSelector(profile))
+                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .setBackpressureStrategy(profile.isKeepOnlyLatest()
+                        ? ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST
+                        : ImageAnalysis.STRATEGY_BLOCK_PRODUCER)
+                .setImageQueueDepth(profile.getQueueDepth());
+        // The standard profile leaves auto exposure free to lower the rate in low light, as before profiles
+        Range<Integer> fpsRange;
+        if (primary && isIdleCapture()) {
+            fpsRange = chooseFpsRange(pipeline.getCameraId(), IDLE_FRAME_RATE);
+        } else {
+            fpsRange = profile == StreamProfile.STANDARD
+                    ? null
+                    : chooseFpsRange(pipeline.getCameraId(), profile.getFrameRate());
+        }
+        if (fpsRange != null) {
+            new Camera2Interop.Extender<>(analysisBuilder)
+                    .setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+        }
+        ImageAnalysis imageAnalysis = analysisBuilder.build();
+
+        // The AE range is only a hint, the analyzer enforces the target rate itself
+        long intervalNs = 1_000_000_000L / profile.getFrameRate();
+        pipeline.configure(intervalNs, profile.getJpegQuality());
+        if (primary) {
+            cameraExecutor.execute(() -> {
+                minFrameIntervalNs = intervalNs - intervalNs / 10;
+                jpegQuality = profile.getJpegQuality();
+            });
+        }
+        imageAnalysis.setAnalyzer(pipeline.getExecutor(), pipeline.getAnalyzer());
+
+        UseCaseGroup.Builder group = new UseCaseGroup.Builder().addUseCase(imageAnalysis);
+        // Only the primary camera feeds the in-app preview, and not while the activity is stopped
+        if (primary && !isMinimized) {
+            Preview preview = new Preview.Builder().build();
+            preview.setSurfaceProvider(previewSurfaceProvider);
+            group.addUseCase(preview);
+        }
+        return group.build();
     }
 
-    public void setFlashlight(boolean state) {
-        isOn = state;
-        if (camera != null) {
-            camera.getCameraControl().enableTorch(state);
+    private void analyze(ImageProxy image) {
+        long timestampNs = image.getImageInfo().getTimestamp();
+        // Frames can arrive before the web service is bound or after it went away
+        MJPEGWebService webService = mjpegWebService;
+        if (webService == null || timestampNs - lastFrameTimestampNs < minFrameIntervalNs) {
+            image.close();
+            return;
+        }
+        lastFrameTimestampNs = timestampNs;
+
+        // Motion is checked on the untouched Y plane at the target rate, or the idle sensor rate without
+        // viewers, so no event is missed and the overlay clock is not mistaken for motion
+        ImageProxy.PlaneProxy luma = image.getPlanes()[0];
+        boolean motion = webService.updateMotion(luma.getBuffer(), luma.getRowStride(), image.getWidth(), image.getHeight());
+
+        // Skip all conversion and encoding while nobody is connected, apart from a rare keepalive frame
+        boolean active = webService.hasActiveSubscribers();
+        long now = SystemClock.elapsedRealtime();
+        updateIdleCapture(active, now);
+        if (active) {
+            renewWakeLock(now);
+        } else if (now - lastKeepAliveFrameMs < IDLE_KEEPALIVE_INTERVAL_MS) {
+            image.close();
+            return;
+        } else {
+            lastKeepAliveFrameMs = now;
         }
-    }
 
-    public byte[] YUV420toNV21(ImageProxy image) {
-        ImageProxy.PlaneProxy[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
+        // A static scene drops to one frame per interval until something moves
+        if (active && !motion && timestampNs - lastProcessedTimestampNs < STATIC_FRAME_INTERVAL_NS) {
+            image.close();
+            return;
+        }
+        lastProcessedTimestampNs = timestampNs;
 
-        int ySize = yBuffer.remaining();
-        int uSize = uBuffer.remaining();
-        int vSize = vBuffer.remaining();
+        long captureLatencyNs = captureLatencyNanos(timestampNs);
+        PipelineMetrics.CAPTURE_TO_ANALYZER.record(captureLatencyNs);
+        // Sensor time mapped onto the wall clock, so browsers can compare it with their own
+        long captureMillis = System.currentTimeMillis() - captureLatencyNs / 1_000_000L;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // Every buffer in flight means the later stages are behind, so this frame is dropped
+        byte[] buffer = framePipeline.acquireBuffer(width * height * 3 / 2);
+        if (buffer == null) {
+            image.close();
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] nv21 = toNV21(nv21Converter, image, buffer);
+        PipelineMetrics.NV21_CONVERSION.record(System.nanoTime() - start);
+        // The camera gets its buffer back before overlay and encode start
+        image.close();
+        framePipeline.submit(nv21, width, height, timestampNs, captureMillis,
+                !active || webService.hasFullFrameSubscribers());
+    }
 
-        byte[] nv21 = new byte[ySize + uSize + vSize];
+    // Runs on the analyzer, the rebind itself happens on the main thread
+    private void updateIdleCapture(boolean active, long now) {
+        if (active) {
+            inactiveSinceMs = 0;
+            if (idleRequested) {
+                idleRequested = false;
+                mainHandler.post(() -> setCaptureIdle(false));
+            }
+        } else if (inactiveSinceMs == 0) {
+            inactiveSinceMs = now;
+        } else if (!idleRequested && now - inactiveSinceMs >= IDLE_CAPTURE_DELAY_MS) {
+            idleRequested = true;
+            mainHandler.post(() -> setCaptureIdle(true));
+        }
+    }
 
-        // Copy Y plane
-        yBuffer.get(nv21, 0, ySize);
+    private void setCaptureIdle(boolean idle) {
+        boolean wasIdle = isIdleCapture();
+        captureIdle = idle;
+        // Only the primary camera's slot runs the analyzer that asked for the change
+        if (wasIdle != isIdleCapture() && activeSlot == 0 && cameraProvider != null && lifeCycleOwner != null) {
+            Log.d(TAG, idle ? "No viewers, lowering the sensor rate" : "Viewer connected, restoring the sensor rate");
+            bindUseCases();
+        }
+    }
 
-        // Get U/V pixel stride
-        int pixelStride = planes[1].getPixelStride();
-        int rowStride = planes[1].getRowStride();
-        int width = image.getWidth();
-        int height = image.getHeight();
+    // The in-app preview is a viewer too, so the rate only drops while the activity is stopped
+    private boolean isIdleCapture() {
+        return captureIdle && isMinimized;
+    }
 
-        // Copy UV planes correctly
-        byte[] uBytes = new byte[uSize];
-        byte[] vBytes = new byte[vSize];
-        uBuffer.get(uBytes);
-        vBuffer.get(vBytes);
+    // Additional cameras only stream, motion, clips, recording and variants stay with the primary camera
+    private void analyzeCamera(CameraPipeline pipeline, ImageProxy image) {
+        try {
+            long timestampNs = image.getImageInfo().getTimestamp();
+            MJPEGWebService webService = mjpegWebService;
+            if (webService == null || !pipeline.acceptFrame(timestampNs)
+                    || !webService.hasCameraSubscribers(pipeline.getCameraId())) {
+                return;
+            }
+            long captureMillis = System.currentTimeMillis() - captureLatencyNanos(timestampNs) / 1_000_000L;
+            int width = image.getWidth();
+            int height = image.getHeight();
+            byte[] nv21 = toNV21(pipeline.getConverter(), image);
+            LumaOverlay cameraOverlay = pipeline.getOverlay();
+            cameraOverlay.setText(overlayState.getDateText(), overlayState.getBatteryText());
+            cameraOverlay.apply(nv21, width, height);
+            webService.sendCameraFrameToServer(pipeline.getCameraId(),
+                    encodeJpeg(nv21, width, height, pipeline.getJpegQuality()), captureMillis);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to update frame of camera " + pipeline.getCameraId(), e);
+        } finally {
+            image.close();
+        }
+    }
 
-        int uvPos = ySize;
+    /*
+     * Sensor timestamps are in the elapsedRealtime base on most devices but in the uptime base on
+     * some older ones (SENSOR_INFO_TIMESTAMP_SOURCE_UNKNOWN). The base giving the plausible,
+     * smaller non-negative latency is the one in use.
+     */
+    private static long captureLatencyNanos(long sensorTimestampNanos) {
+        long realtimeLatency = SystemClock.elapsedRealtimeNanos() - sensorTimestampNanos;
+        long uptimeLatency = SystemClock.uptimeMillis() * 1_000_000L - sensorTimestampNanos;
+        if (uptimeLatency >= 0 && (realtimeLatency < 0 || uptimeLatency < realtimeLatency)) return uptimeLatency;
+        return Math.max(0, realtimeLatency);
+    }
 
-        for (int row = 0; row < height / 2; row++) {
-            for (int col = 0; col < width / 2; col++) {
-                int uIndex = row * rowStride + col * pixelStride;
-                int vIndex = row * rowStride + col * pixelStride;
+    // Smallest advertised AE range of the camera that still reaches the target rate, fixed ranges preferred
+    private Range<Integer> chooseFpsRange(String cameraId, int frameRate) {
+        CameraManager manager = (CameraManager) getSystemService(CAMERA_SERVICE);
+        try {
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+            Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            if (ranges == null) return null;
+            Range<Integer> best = null;
+            for (Range<Integer> range : ranges) {
+                if (range.getUpper() < frameRate) continue;
+                if (best == null || range.getUpper() < best.getUpper()
+                        || (range.getUpper().equals(best.getUpper()) && range.getLower() > best.getLower())) {
+                    best = range;
+                }
+            }
+            return best;
+        } catch (CameraAccessException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to read camera fps ranges", e);
+        }
+        return null;
+    }
 
-                nv21[uvPos++] = vBytes[vIndex]; // V
-                nv21[uvPos++] = uBytes[uIndex]; // U
+    // Closest size to the profile, larger ones first, in the 16:9 or 4:3 family the profile is nearest to
+    private static ResolutionSelector buildResolutionSelector(StreamProfile profile) {
+        float ratio = (float) profile.getWidth() / profile.getHeight();
+        int aspectRatio = Math.abs(ratio - 16f / 9f) < Math.abs(ratio - 4f / 3f)
+                ? AspectRatio.RATIO_16_9
+                : AspectRatio.RATIO_4_3;
+        return new ResolutionSelector.Builder()
+                .setAspectRatioStrategy(new AspectRatioStrategy(aspectRatio, AspectRatioStrategy.FALLBACK_RULE_AUTO))
+                .setResolutionStrategy(new ResolutionStrategy(new Size(profile.getWidth(), profile.getHeight()),
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                .build();
+    }
+
+    static Map<String, String> getProfileValues(Intent intent) {
+        Map<String, String> values = new HashMap<>();
+        Bundle extras = intent.getExtras();
+        if (extras == null) return values;
+        for (String key : StreamProfile.KEYS) {
+            if (!extras.containsKey(key)) continue;
+            // putProfile sends strings, callers like adb may send the numeric settings as ints
+            String value = extras.getString(key);
+            if (value == null && !key.equals(StreamProfile.KEY_PROFILE) && !key.equals(StreamProfile.KEY_STRATEGY)) {
+                value = Integer.toString(extras.getInt(key));
             }
+            if (value != null) values.put(key, value);
         }
+        return values;
+    }
 
-        return nv21;
+    static void putProfile(Intent intent, StreamProfile profile) {
+        for (Map.Entry<String, String> entry : profile.toMap().entrySet()) {
+            intent.putExtra(entry.getKey(), entry.getValue());
+        }
+    }
 
+    private void renewWakeLock(long now) {
+        if (wakeLock == null || (wakeLock.isHeld() && now - wakeLockAcquiredMs < WAKE_LOCK_RENEW_MS)) return;
+        wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+        wakeLockAcquiredMs = now;
     }
 
-    private byte[] convertYUVToJPEG(ImageProxy image) {
-        byte[] nv21 = YUV420toNV21(image);
-        int width = image.getWidth();
-        int height = image.getHeight();
+    public static void setPreviewSurfaceProvider(Preview.SurfaceProvider provider) {
+        previewSurfaceProvider = provider;
+    }
+
+    public void setFlashlight(boolean state) {
+        isOn = state;
+        if (camera != null) {
+            camera.getCameraControl().enableTorch(state);
+        }
+    }
+
+    public byte[] YUV420toNV21(ImageProxy image) {
+        return toNV21(nv21Converter, image);
+    }
+
+    private static byte[] toNV21(NV21Converter converter, ImageProxy image) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        return converter.convert(
+                planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight());
+    }
+
+    private static byte[] toNV21(NV21Converter converter, ImageProxy image, byte[] output) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        return converter.convert(
+                planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), output);
+    }
 
+    private byte[] convertYUVToJPEG(byte[] nv21, int width, int height) {
+        return encodeJpeg(nv21, width, height, jpegQuality);
+    }
+
+    private static byte[] encodeJpeg(byte[] nv21, int width, int height, int quality) {
+        long start = System.nanoTime();
         YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, width, height), 80, out);
-
-        return out.toByteArray();
+        yuvImage.compressToJpeg(new Rect(0, 0, width, height), quality, out);
+        byte[] jpeg = out.toByteArray();
+        PipelineMetrics.JPEG_ENCODE.record(System.nanoTime() - start);
+        PipelineMetrics.FRAME_SIZE.record(jpeg.length);
+        return jpeg;
 
     }
 
@@ -315,9 +780,17 @@ public class CameraStreamService extends Service {
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(flashlightReceiver);
+        unregisterReceiver(profileReceiver);
+        if (overlayState != null) overlayState.stop();
         isStreaming = false;
         if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
+        // Also drops pending idle rate changes, which would rebind the camera after unbindAll
+        mainHandler.removeCallbacksAndMessages(null);
+        for (CameraPipeline pipeline : cameraPipelines) {
+            pipeline.shutdown();
+        }
         if (cameraExecutor != null) cameraExecutor.shutdown();
+        if (framePipeline != null) framePipeline.stop();
         if (cameraProvider != null) cameraProvider.unbindAll();
         if (lifeCycleOwner != null) lifeCycleOwner.stop();
         if (isBound) unbindService(connection);
@@ -326,7 +799,7 @@ public class CameraStreamService extends Service {
         } catch (IOException e) {
             Log.e(TAG, "Failed to send frame to server", e);
         }
-        uiPublisher.notifySubscribers();
+        eventBus.publish(new StreamStateEvent(false));
         stopService();
     }
 
@@ -337,66 +810,16 @@ public class CameraStreamService extends Service {
         stopSelf();
     }
 
-    public byte[] drawInformation(byte[] jpeg) {
-        String chargingStatus = "";
-        Bitmap bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
-        bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(bitmap);
-        Paint paint = new Paint();
-        paint.setTypeface(Typeface.DEFAULT_BOLD);
-
-
-
-        String dateText = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
-                .format(new Date());
-        if (isPhoneCharging() > 0) {
-            chargingStatus = "Plugged";
-        }
-
-        String batteryText = "BAT:" + getBatteryLevel() + "%" + " " + chargingStatus;
-        // Outline
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(2);
-        paint.setColor(Color.BLACK);
-        canvas.drawText(dateText, 5, 20, paint);
-        canvas.drawText(batteryText, 5, 35, paint);
-        // Text fill
-        paint.setStyle(Paint.Style.FILL);
-        paint.setColor(Color.WHITE);
-        canvas.drawText(dateText, 5, 20, paint);
-        canvas.drawText(batteryText, 5, 35, paint);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
-        return out.toByteArray();
-    }
-
-    public int isPhoneCharging() {
-        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = getApplicationContext().registerReceiver(null, filter);
-        if (batteryStatus != null) {
-            return batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
-        }
-        return -1;
+    public void drawInformation(byte[] nv21, int width, int height) {
+        long start = System.nanoTime();
+        overlay.setText(overlayState.getDateText(), overlayState.getBatteryText());
+        overlay.apply(nv21, width, height);
+        PipelineMetrics.OVERLAY.record(System.nanoTime() - start);
     }
 
     public boolean isStreaming() {
         return isStreaming;
     }
 
-
-    public int getBatteryLevel() {
-        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = getApplicationContext().registerReceiver(null, filter);
-
-        if (batteryStatus != null) {
-            int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-            int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-            if (level != -1 && scale != -1) {
-                return (int) ((level * 100f) / (float) scale);
-            }
-        }
-        return -1;
-    }
-
 }
 
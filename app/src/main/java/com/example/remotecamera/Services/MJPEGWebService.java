@@ -18,10 +18,17 @@ import android.util.Log;
 import androidx.annotation.RequiresApi;
 import androidx.core.app.NotificationCompat;
 
+import com.example.remotecamera.Codec.H264EncoderConfig;
 import com.example.remotecamera.HttpHandler.MJPEGServer;
 import com.example.remotecamera.Interface.IStreamable;
+import com.example.remotecamera.Recording.SegmentRecorder;
+
+import java.io.File;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
 
 import fi.iki.elonen.NanoHTTPD;
 
@@ -32,14 +39,32 @@ public class MJPEGWebService extends Service implements IStreamable {
     private MJPEGServer mjpegServer;
     private static final String CHANNEL_ID = "MJGPEGWebServerForegroundChannel";
     private static final String TAG = "WEBFGService";
+    private static final long SEGMENT_MILLIS = 5 * 60_000;
+    private static final long SEGMENT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final int DEFAULT_RECORD_MAX_MB = 4096;
+    private static final int DEFAULT_RECORD_MAX_AGE_HOURS = 72;
     private final IBinder binder = new WebBinder();
     private boolean flashlightState = false;
+    private volatile StreamProfile streamProfile = StreamProfile.defaults();
 
 
     private final BroadcastReceiver flashlightStatusReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             flashlightState = intent.getBooleanExtra("flashlightStatus", false);
+            if (mjpegServer != null) mjpegServer.publishStatus();
+        }
+    };
+
+    // The camera service reports the profile it actually bound with
+    private final BroadcastReceiver profileStatusReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            try {
+                streamProfile = StreamProfile.parse(CameraStreamService.getProfileValues(intent), streamProfile);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Invalid stream profile status: " + e.getMessage());
+            }
         }
     };
 
@@ -70,6 +95,7 @@ public class MJPEGWebService extends Service implements IStreamable {
 
         IntentFilter filter = new IntentFilter("com.remotecamera.FLASHLIGHT_STATUS");
         registerReceiver(flashlightStatusReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        registerReceiver(profileStatusReceiver, new IntentFilter("com.remotecamera.PROFILE_STATUS"), Context.RECEIVER_NOT_EXPORTED);
     }
 
     @Override
@@ -80,11 +106,29 @@ public class MJPEGWebService extends Service implements IStreamable {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "Onstart Command called for MJPEGWebService");
+        H264EncoderConfig h264Config = H264EncoderConfig.defaults();
+        int maxStreams = MJPEGServer.DEFAULT_MAX_STREAMS;
+        int clipBufferMb = MJPEGServer.DEFAULT_CLIP_BUFFER_MB;
         if (intent != null) {
             port = intent.getIntExtra("port", 3014);
+            maxStreams = intent.getIntExtra("maxStreams", MJPEGServer.DEFAULT_MAX_STREAMS);
+            clipBufferMb = intent.getIntExtra("clipBufferMb", MJPEGServer.DEFAULT_CLIP_BUFFER_MB);
+            h264Config = new H264EncoderConfig(
+                    intent.getIntExtra("h264Bitrate", H264EncoderConfig.DEFAULT_BITRATE),
+                    intent.getIntExtra("h264FrameRate", H264EncoderConfig.DEFAULT_FRAME_RATE),
+                    intent.getIntExtra("h264GopSeconds", H264EncoderConfig.DEFAULT_GOP_SECONDS));
         }
         Log.d(TAG, "Starting web service on port" + port);
+        // A redelivered start replaces the server, the old one must release the port and its recorder
+        if (mjpegServer != null) mjpegServer.stop();
         mjpegServer = new MJPEGServer(port, this);
+        mjpegServer.setH264Config(h264Config);
+        mjpegServer.setMaxStreams(maxStreams);
+        mjpegServer.setClipBufferSize(clipBufferMb);
+        if (intent != null && intent.getBooleanExtra("recordSegments", false)) {
+            startSegmentRecording(intent.getIntExtra("recordMaxMb", DEFAULT_RECORD_MAX_MB),
+                    intent.getIntExtra("recordMaxAgeHours", DEFAULT_RECORD_MAX_AGE_HOURS));
+        }
         try {
             Log.d(TAG, "Starting web service on port" + port);
             mjpegServer.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
@@ -97,6 +141,18 @@ public class MJPEGWebService extends Service implements IStreamable {
         return START_REDELIVER_INTENT;
     }
 
+    private void startSegmentRecording(int maxMb, int maxAgeHours) {
+        File root = getExternalFilesDir(null);
+        File directory = new File(root != null ? root : getFilesDir(), "recordings");
+        try {
+            mjpegServer.setSegmentRecorder(new SegmentRecorder(directory, SEGMENT_MILLIS, SEGMENT_MAX_BYTES,
+                    maxMb * 1024L * 1024L, maxAgeHours * 3_600_000L));
+            Log.d(TAG, "Recording segments to " + directory);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start segment recording", e);
+        }
+    }
+
     @Override
     public void setFlashlight(boolean state) {
         Intent intent = new Intent("com.remotecamera.FLASHLIGHT_ACTION");
@@ -111,6 +167,20 @@ public class MJPEGWebService extends Service implements IStreamable {
         return flashlightState;
     }
 
+    @Override
+    public StreamProfile getStreamProfile() {
+        return streamProfile;
+    }
+
+    // Applied by CameraStreamService, which rebinds the camera and reports back
+    @Override
+    public void setStreamProfile(StreamProfile profile) {
+        Intent intent = new Intent("com.remotecamera.PROFILE_ACTION");
+        intent.setPackage(getPackageName());
+        CameraStreamService.putProfile(intent, profile);
+        sendBroadcast(intent);
+    }
+
     private void startForegroundServiceNotification() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Web Server", NotificationManager.IMPORTANCE_LOW);
@@ -130,7 +200,44 @@ public class MJPEGWebService extends Service implements IStreamable {
         mjpegServer.setLatestFrame(frame);
     }
 
-    public void stop() {
-        mjpegServer.stop();
+    public void sendFrameToServer(byte[] frame, long captureMillis) throws IOException {
+        mjpegServer.setLatestFrame(frame, captureMillis);
+    }
+
+    public void sendCameraFrameToServer(String cameraId, byte[] frame, long captureMillis) throws IOException {
+        mjpegServer.setLatestCameraFrame(cameraId, frame, captureMillis);
+    }
+
+    public void setCameras(String primaryId, List<String> cameraIds, Set<String> timeSliced) {
+        mjpegServer.setCameras(primaryId, cameraIds, timeSliced);
+    }
+
+    public boolean hasCameraSubscribers(String cameraId) {
+        return mjpegServer.hasCameraSubscribers(cameraId);
+    }
+
+    public void sendRawFrameToServer(byte[] nv21, int width, int height, long timestampUs) {
+        mjpegServer.setLatestRawFrame(nv21, width, height, timestampUs);
+    }
+
+    public boolean updateMotion(ByteBuffer yPlane, int rowStride, int width, int height) {
+        return mjpegServer.updateMotion(yPlane, rowStride, width, height);
+    }
+
+    public boolean hasActiveSubscribers() {
+        return mjpegServer.hasActiveSubscribers();
+    }
+
+    public boolean hasFullFrameSubscribers() {
+        return mjpegServer.hasFullFrameSubscribers();
+    }
+
+    // Closes the clients and lets the segment recorder flush and close its files
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        unregisterReceiver(flashlightStatusReceiver);
+        unregisterReceiver(profileStatusReceiver);
+        if (mjpegServer != null) mjpegServer.stop();
     }
 }
@@ -0,0 +1,168 @@
+package com.example.remotecamera.Services;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Capture settings for the camera analyzer: analysis resolution, target frame rate,
+ * backpressure strategy, image queue depth and full resolution JPEG quality.
+ * Profiles travel as string key/values so the start Intent and /config share one parser.
+ */
+public final class StreamProfile {
+
+    public static final String KEY_PROFILE = "profile";
+    public static final String KEY_WIDTH = "width";
+    public static final String KEY_HEIGHT = "height";
+    public static final String KEY_FPS = "fps";
+    public static final String KEY_STRATEGY = "strategy";
+    public static final String KEY_QUEUE_DEPTH = "queueDepth";
+    public static final String KEY_QUALITY = "quality";
+    public static final String[] KEYS = {KEY_PROFILE, KEY_WIDTH, KEY_HEIGHT, KEY_FPS, KEY_STRATEGY, KEY_QUEUE_DEPTH, KEY_QUALITY};
+
+    public static final String STRATEGY_LATEST = "latest";
+    public static final String STRATEGY_BLOCK = "block";
+    private static final String CUSTOM = "custom";
+
+    // Capture as before profiles existed: CameraX's default 640x480 analysis size, camera rate, quality 80
+    public static final StreamProfile STANDARD = new StreamProfile("standard", 640, 480, 30, STRATEGY_LATEST, 1, 80);
+    // Long running, low power monitoring
+    public static final StreamProfile MONITORING = new StreamProfile("monitoring", 1280, 720, 10, STRATEGY_LATEST, 1, 70);
+    // Short interactive sessions
+    public static final StreamProfile SESSION = new StreamProfile("session", 1920, 1080, 30, STRATEGY_LATEST, 1, 80);
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final String strategy;
+    private final int queueDepth;
+    private final int jpegQuality;
+
+    public StreamProfile(String name, int width, int height, int frameRate, String strategy, int queueDepth, int jpegQuality) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid resolution: " + width + "x" + height);
+        if (frameRate <= 0 || frameRate > 60) throw new IllegalArgumentException("Frame rate must be 1-60: " + frameRate);
+        if (!STRATEGY_LATEST.equals(strategy) && !STRATEGY_BLOCK.equals(strategy)) {
+            throw new IllegalArgumentException("Strategy must be " + STRATEGY_LATEST + " or " + STRATEGY_BLOCK + ": " + strategy);
+        }
+        if (queueDepth < 1 || queueDepth > 8) throw new IllegalArgumentException("Queue depth must be 1-8: " + queueDepth);
+        if (jpegQuality < 1 || jpegQuality > 100) throw new IllegalArgumentException("JPEG quality must be 1-100: " + jpegQuality);
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.strategy = strategy;
+        this.queueDepth = queueDepth;
+        this.jpegQuality = jpegQuality;
+    }
+
+    public static StreamProfile defaults() {
+        return STANDARD;
+    }
+
+    public static StreamProfile forName(String name) {
+        if (STANDARD.name.equalsIgnoreCase(name)) return STANDARD;
+        if (MONITORING.name.equalsIgnoreCase(name)) return MONITORING;
+        if (SESSION.name.equalsIgnoreCase(name)) return SESSION;
+        throw new IllegalArgumentException("Unknown profile: " + name);
+    }
+
+    /*
+     * Applies the given values on top of base: a "profile" entry selects a preset first, any
+     * other entry overrides a single setting. Unknown keys are ignored.
+     */
+    public static StreamProfile parse(Map<String, String> values, StreamProfile base) {
+        String profileName = values.get(KEY_PROFILE);
+        if (profileName != null && !profileName.equalsIgnoreCase(CUSTOM)) base = forName(profileName);
+        boolean overridden = false;
+        for (String key : KEYS) {
+            if (!key.equals(KEY_PROFILE) && values.get(key) != null) overridden = true;
+        }
+        if (!overridden) return base;
+
+        StreamProfile profile = new StreamProfile(CUSTOM,
+                parseInt(values, KEY_WIDTH, base.width),
+                parseInt(values, KEY_HEIGHT, base.height),
+                parseInt(values, KEY_FPS, base.frameRate),
+                values.containsKey(KEY_STRATEGY) ? values.get(KEY_STRATEGY).toLowerCase(Locale.ROOT) : base.strategy,
+                parseInt(values, KEY_QUEUE_DEPTH, base.queueDepth),
+                parseInt(values, KEY_QUALITY, base.jpegQuality));
+        return profile.equals(base) ? base : profile;
+    }
+
+    private static int parseInt(Map<String, String> values, String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(KEY_PROFILE, name);
+        values.put(KEY_WIDTH, Integer.toString(width));
+        values.put(KEY_HEIGHT, Integer.toString(height));
+        values.put(KEY_FPS, Integer.toString(frameRate));
+        values.put(KEY_STRATEGY, strategy);
+        values.put(KEY_QUEUE_DEPTH, Integer.toString(queueDepth));
+        values.put(KEY_QUALITY, Integer.toString(jpegQuality));
+        return values;
+    }
+
+    public String toJson() {
+        return "{\"profile\":\"" + name + "\",\"width\":" + width + ",\"height\":" + height
+                + ",\"fps\":" + frameRate + ",\"strategy\":\"" + strategy + "\",\"queueDepth\":" + queueDepth
+                + ",\"quality\":" + jpegQuality + "}";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    public boolean isKeepOnlyLatest() {
+        return STRATEGY_LATEST.equals(strategy);
+    }
+
+    // Only used by the blocking strategy, keep-only-latest always holds a single image
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof StreamProfile)) return false;
+        StreamProfile other = (StreamProfile) o;
+        return width == other.width && height == other.height && frameRate == other.frameRate
+                && strategy.equals(other.strategy) && queueDepth == other.queueDepth && jpegQuality == other.jpegQuality;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((((width * 31 + height) * 31 + frameRate) * 31 + strategy.hashCode()) * 31 + queueDepth) * 31 + jpegQuality;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + width + "x" + height + "@" + frameRate + " " + strategy + " depth=" + queueDepth + " q=" + jpegQuality;
+    }
+}
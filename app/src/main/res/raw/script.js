@@ -11,6 +11,9 @@ let recordedChunks = []
 let stopped = true
 let isStreaming = false
 let flashState = false
+let fps = 0
+let motion = false
+let clients = 0
 updateUI()
 
 function fetchStatus() {
@@ -34,9 +37,77 @@ function fetchStatus() {
         })
 }
 
-fetchStatus()
-setInterval(fetchStatus, 500) 
+function applyStatus(status) {
+    isStreaming = status.streaming
+    flashState = status.flashlight
+    fps = status.fps
+    clients = status.clients
+    motion = status.motion
+    updateUI()
+}
 
+// Status is pushed by the server, polling is only a fallback for browsers without EventSource
+function subscribeStatus() {
+    if (window.EventSource) {
+        const events = new EventSource("/events")
+        events.addEventListener("status", event => applyStatus(JSON.parse(event.data)))
+        events.onerror = error => {
+            console.error("Status event stream error:", error)
+        }
+    } else {
+        fetchStatus()
+        setInterval(fetchStatus, 500)
+    }
+}
+
+// Frames, status and torch share one WebSocket; /stream and /events are the fallback
+const FRAME_HEADER_SIZE = 20
+let socket = null
+let frameUrl = null
+
+function openSocket() {
+    let opened = false
+    socket = new WebSocket(`ws://${location.host}/ws`)
+    socket.binaryType = "arraybuffer"
+    socket.onopen = () => {
+        opened = true
+    }
+    socket.onmessage = event => {
+        if (typeof event.data === "string") {
+            const message = JSON.parse(event.data)
+            if (message.type === "status") applyStatus(message.status)
+            return
+        }
+        // Header: sequence (u64), capture time in ms (u64), JPEG size (u32), all big-endian
+        const header = new DataView(event.data, 0, FRAME_HEADER_SIZE)
+        const size = header.getUint32(16)
+        const jpeg = new Blob([new Uint8Array(event.data, FRAME_HEADER_SIZE, size)], { type: "image/jpeg" })
+        const previous = frameUrl
+        frameUrl = URL.createObjectURL(jpeg)
+        img.onload = () => {
+            if (previous) URL.revokeObjectURL(previous)
+            // One credit per displayed frame, so a slow tab never has frames queued for it
+            if (socket) socket.send(JSON.stringify({ type: "ack", credits: 1 }))
+        }
+        img.src = frameUrl
+    }
+    socket.onclose = () => {
+        socket = null
+        if (opened) {
+            setTimeout(openSocket, 1000)
+        } else {
+            img.src = "/stream"
+            subscribeStatus()
+        }
+    }
+}
+
+if (window.WebSocket) {
+    openSocket()
+} else {
+    img.src = "/stream"
+    subscribeStatus()
+}
 
 function startRecording() {
     stopped = false
@@ -79,6 +150,14 @@ function stopRecording() {
     }
 }
 
+// Recorded on the phone, so no frames are lost and no tab has to stay open
+function downloadClip(seconds) {
+    const link = document.createElement("a")
+    link.href = `/clip?seconds=${seconds}`
+    link.download = `clip-${Date.now()}.avi`
+    link.click()
+}
+
 function flashlight(state) {
     fetch(`/flashlight?state=${state}`, { method: "GET" })
         .then(response => response.text())
@@ -91,6 +170,10 @@ function flashlight(state) {
 }
 
 function turnOnFlashlight() {
+    if (socket && socket.readyState === WebSocket.OPEN) {
+        socket.send(JSON.stringify({ type: "torch", on: true }))
+        return
+    }
     fetch(`/flashlight?state=on`, { method: "GET" })
         .then(response => response.text())
         .then(data => {
@@ -104,6 +187,10 @@ function turnOnFlashlight() {
 }
 
 function turnOffFlashlight() {
+    if (socket && socket.readyState === WebSocket.OPEN) {
+        socket.send(JSON.stringify({ type: "torch", on: false }))
+        return
+    }
     fetch(`/flashlight?state=off`, { method: "GET" })
         .then(response => response.text())
         .then(data => {
@@ -125,6 +212,7 @@ function updateUI() {
 
     // Status text
     statusText.textContent = isStreaming ? (stopped ? "Streaming" : "Recording") : "Stopped"
+    if (isStreaming) statusText.textContent += ` (${fps} fps, ${clients} viewers${motion ? ", motion" : ""})`
     onFlashBtn.disabled = !isStreaming || flashState // Flashlight button on should be disabled if not streaming and flashlight is on
     // Flashlight button off should be disabled if not streaming or flashlight is off
     offFlashBtn.disabled = !isStreaming || !flashState
@@ -0,0 +1,25 @@
+// JVM microbenchmarks for the streaming hot path: ./gradlew :benchmark:jmh
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    // jmh-core and the annotation processor come from the plugin, pinned by jmhVersion
+    jmh(project(":streamcore"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // Reports allocation rate (gc.alloc.rate.norm) next to every score
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
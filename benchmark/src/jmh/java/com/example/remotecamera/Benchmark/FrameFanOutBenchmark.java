@@ -0,0 +1,79 @@
+package com.example.remotecamera.Benchmark;
+
+import com.example.remotecamera.HttpHandler.Frame;
+import com.example.remotecamera.HttpHandler.FrameBroadcaster;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Publishing one frame to N simulated clients on the shared delivery pool, measured until
+ * every client has received it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameFanOutBenchmark {
+
+    // Same pool size as MJPEGServer
+    private static final int FANOUT_WORKERS = 4;
+
+    @Param({"1", "4", "16", "64"})
+    public int clients;
+
+    private final byte[] jpeg = new byte[64 * 1024];
+    private ExecutorService deliveryExecutor;
+    private FrameBroadcaster broadcaster;
+    private CountingSink[] sinks;
+
+    @Setup
+    public void setUp() {
+        deliveryExecutor = FrameBroadcaster.newDeliveryPool(FANOUT_WORKERS);
+        broadcaster = new FrameBroadcaster(deliveryExecutor);
+        sinks = new CountingSink[clients];
+        for (int i = 0; i < clients; i++) {
+            sinks[i] = new CountingSink();
+            broadcaster.subscribe(sinks[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        broadcaster.shutdown();
+        deliveryExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public long publish() {
+        long sequence = broadcaster.publish(jpeg).getSequence();
+        for (CountingSink sink : sinks) {
+            while (sink.lastSequence < sequence) {
+                Thread.yield();
+            }
+        }
+        return sequence;
+    }
+
+    private static final class CountingSink implements FrameBroadcaster.FrameSink {
+        private volatile long lastSequence = 0;
+
+        @Override
+        public void onFrame(Frame frame) {
+            lastSequence = frame.getSequence();
+        }
+
+        @Override
+        public void onClosed() {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.remotecamera.Benchmark;
+
+import com.example.remotecamera.HttpHandler.Frame;
+import com.example.remotecamera.HttpHandler.MJPEGPartStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * multipart/x-mixed-replace framing as served by /stream: one frame is handed to a client
+ * stream and read back in NanoHTTPD sized chunks until the part, including its trailing
+ * boundary, has been produced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MJPEGFramingBenchmark {
+
+    // NanoHTTPD's chunked response copies through a 16 KiB buffer
+    private static final int SOCKET_BUFFER = 16 * 1024;
+    private static final int PART_END_LENGTH = "\r\n--frame\r\n".length();
+    private static final long KEEPALIVE_MS = 60_000;
+
+    @Param({"32768", "131072", "524288"})
+    public int frameSize;
+
+    private final byte[] socketBuffer = new byte[SOCKET_BUFFER];
+    private MJPEGPartStream stream;
+    private byte[] jpeg;
+    private long sequence = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        jpeg = new byte[frameSize];
+        new Random(42).nextBytes(jpeg);
+        stream = new MJPEGPartStream("benchmark", KEEPALIVE_MS, 0);
+        // The opening boundary is only written once per client
+        readPart("--frame\r\n".length());
+    }
+
+    @TearDown
+    public void tearDown() {
+        stream.close();
+    }
+
+    @Benchmark
+    public long framePart() throws IOException {
+        Frame frame = new Frame(jpeg, ++sequence, System.currentTimeMillis());
+        stream.onFrame(frame);
+        return readPart(frame.getPartHeader().length + frameSize + PART_END_LENGTH);
+    }
+
+    private long readPart(int length) throws IOException {
+        long total = 0;
+        while (total < length) {
+            int n = stream.read(socketBuffer, 0, (int) Math.min(socketBuffer.length, length - total));
+            if (n < 0) throw new IOException("Stream ended mid part");
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.remotecamera.Benchmark;
+
+import com.example.remotecamera.Imaging.NV21Converter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * YUV_420_888 to NV21 conversion with the plane layouts cameras actually deliver:
+ * interleaved VU with tight or padded rows (most devices) and fully planar chroma.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NV21ConversionBenchmark {
+
+    // Row padding seen on devices that align strides to 64 bytes
+    private static final int ROW_ALIGNMENT = 64;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"interleaved", "interleaved_padded", "planar"})
+    public String layout;
+
+    private final NV21Converter converter = new NV21Converter();
+    private ByteBuffer yBuffer;
+    private ByteBuffer uBuffer;
+    private ByteBuffer vBuffer;
+    private int width;
+    private int height;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        boolean padded = layout.equals("interleaved_padded");
+        yRowStride = padded ? align(width) : width;
+
+        Random random = new Random(42);
+        yBuffer = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+        fill(yBuffer, random);
+
+        int chromaHeight = height / 2;
+        if (layout.equals("planar")) {
+            uvPixelStride = 1;
+            uvRowStride = width / 2;
+            uBuffer = ByteBuffer.allocateDirect(uvRowStride * chromaHeight);
+            vBuffer = ByteBuffer.allocateDirect(uvRowStride * chromaHeight);
+            fill(uBuffer, random);
+            fill(vBuffer, random);
+        } else {
+            // One VU interleaved allocation, with the U plane starting one byte into it
+            uvPixelStride = 2;
+            uvRowStride = padded ? align(width) : width;
+            ByteBuffer chroma = ByteBuffer.allocateDirect(uvRowStride * (chromaHeight - 1) + width);
+            fill(chroma, random);
+            chroma.limit(chroma.capacity() - 1);
+            vBuffer = chroma.slice();
+            chroma.limit(chroma.capacity()).position(1);
+            uBuffer = chroma.slice();
+        }
+    }
+
+    private static int align(int stride) {
+        return (stride + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT + ROW_ALIGNMENT;
+    }
+
+    private static void fill(ByteBuffer buffer, Random random) {
+        byte[] bytes = new byte[buffer.capacity()];
+        random.nextBytes(bytes);
+        buffer.put(bytes).flip();
+    }
+
+    @Benchmark
+    public byte[] convert() {
+        return converter.convert(yBuffer, yRowStride, uBuffer, vBuffer, uvRowStride, uvPixelStride, width, height);
+    }
+}
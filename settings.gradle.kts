@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "RemoteCamera"
 include(":app")
+include(":streamcore")
+include(":benchmark")
  
\ No newline at end of file
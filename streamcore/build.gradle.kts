@@ -0,0 +1,13 @@
+// Android-free frame conversion, framing and fan-out code, shared by :app and :benchmark
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,113 @@
+package com.example.remotecamera.Codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+/*
+ * Raw Annex-B H.264 body for one client, read directly by NanoHTTPD.
+ * Unlike MJPEG every access unit matters, so units are queued up to a byte budget. A client
+ * that falls behind has its queue flushed and resumes at the next key frame.
+ */
+public class AnnexBStream extends InputStream {
+
+    private final long maxQueuedBytes;
+    private final Runnable keyFrameRequest;
+
+    // Guarded by this
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private boolean waitingForKeyFrame = true;
+    private boolean closed = false;
+    private long droppedUnits = 0;
+
+    // Only touched by the reading thread
+    private byte[] current;
+    private int position = 0;
+
+    public AnnexBStream(long maxQueuedBytes, Runnable keyFrameRequest) {
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.keyFrameRequest = keyFrameRequest;
+    }
+
+    // Returns false once the client has gone away
+    public boolean offer(byte[] unit, boolean keyFrame) {
+        boolean requestKeyFrame = false;
+        synchronized (this) {
+            if (closed) return false;
+            if (waitingForKeyFrame && !keyFrame) {
+                droppedUnits++;
+                return true;
+            }
+            if (queuedBytes + unit.length > maxQueuedBytes && !queue.isEmpty()) {
+                // Too far behind to catch up, restart from the next key frame
+                droppedUnits += queue.size() + 1;
+                queue.clear();
+                queuedBytes = 0;
+                waitingForKeyFrame = true;
+                requestKeyFrame = true;
+            } else {
+                waitingForKeyFrame = false;
+                queue.addLast(unit);
+                queuedBytes += unit.length;
+                notifyAll();
+            }
+        }
+        if (requestKeyFrame) keyFrameRequest.run();
+        return true;
+    }
+
+    public synchronized long getDroppedUnits() {
+        return droppedUnits;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (current == null && !takeNextUnit()) return -1;
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        if (position == current.length) {
+            current = null;
+            position = 0;
+        }
+        return n;
+    }
+
+    private synchronized boolean takeNextUnit() throws IOException {
+        try {
+            while (queue.isEmpty() && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for video");
+        }
+        if (closed) return false;
+        current = queue.removeFirst();
+        queuedBytes -= current.length;
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        queuedBytes = 0;
+        notifyAll();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.remotecamera.Codec;
+
+/* Bitrate, frame rate and GOP settings for the H.264 endpoint of one server */
+public final class H264EncoderConfig {
+
+    public static final int DEFAULT_BITRATE = 2_000_000;
+    public static final int DEFAULT_FRAME_RATE = 30;
+    public static final int DEFAULT_GOP_SECONDS = 2;
+
+    private final int bitrate;
+    private final int frameRate;
+    private final int gopSeconds;
+
+    public H264EncoderConfig(int bitrate, int frameRate, int gopSeconds) {
+        if (bitrate <= 0) throw new IllegalArgumentException("Bitrate must be positive: " + bitrate);
+        if (frameRate <= 0) throw new IllegalArgumentException("Frame rate must be positive: " + frameRate);
+        if (gopSeconds < 0) throw new IllegalArgumentException("GOP length cannot be negative: " + gopSeconds);
+        this.bitrate = bitrate;
+        this.frameRate = frameRate;
+        this.gopSeconds = gopSeconds;
+    }
+
+    public static H264EncoderConfig defaults() {
+        return new H264EncoderConfig(DEFAULT_BITRATE, DEFAULT_FRAME_RATE, DEFAULT_GOP_SECONDS);
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    // 0 means every frame is a key frame
+    public int getGopSeconds() {
+        return gopSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "bitrate=" + bitrate + " fps=" + frameRate + " gop=" + gopSeconds + "s";
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.remotecamera.Codec;
+
+/*
+ * Produces moving NV21 test frames without a camera, so encoder configurations can be
+ * exercised on their own. The returned buffer is reused by the next call.
+ */
+public class SyntheticFrameSource {
+
+    private final int width;
+    private final int height;
+    private final int frameRate;
+    private final byte[] nv21;
+    private long frameIndex = 0;
+
+    public SyntheticFrameSource(int width, int height, int frameRate) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("Frame size must be positive and even: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.nv21 = new byte[width * height * 3 / 2];
+    }
+
+    public byte[] nextFrame() {
+        int shift = (int) (frameIndex * 4);
+        // Diagonal luma gradient that scrolls every frame
+        for (int row = 0; row < height; row++) {
+            int offset = row * width;
+            for (int col = 0; col < width; col++) {
+                nv21[offset + col] = (byte) (col + row + shift);
+            }
+        }
+        // Chroma bands that drift slower than the luma
+        int chromaOffset = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            int offset = chromaOffset + row * width;
+            byte v = (byte) (128 + ((row + shift / 2) & 0x3F) - 32);
+            for (int col = 0; col < width; col += 2) {
+                nv21[offset + col] = v;
+                nv21[offset + col + 1] = (byte) (128 + ((col / 2) & 0x3F) - 32);
+            }
+        }
+        frameIndex++;
+        return nv21;
+    }
+
+    // Timestamp of the frame last returned by nextFrame()
+    public long getPresentationTimeUs() {
+        return Math.max(0, frameIndex - 1) * 1_000_000L / frameRate;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.remotecamera.HttpHandler;
+
+/* A single satisfiable byte range of an entity, parsed from an HTTP Range header */
+public final class ByteRange {
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /*
+     * Parses "bytes=a-b", "bytes=a-" and "bytes=-n" against an entity of the given length.
+     * Only the first range of a multi-range request is honoured. Returns null when the header
+     * is malformed (the full entity should be served) and throws when the range cannot be
+     * satisfied (416).
+     */
+    public static ByteRange parse(String header, long length) {
+        if (header == null || !header.startsWith("bytes=")) return null;
+        String spec = header.substring("bytes=".length());
+        int comma = spec.indexOf(',');
+        if (comma >= 0) spec = spec.substring(0, comma);
+        spec = spec.trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                if (last.isEmpty()) return null;
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) throw new IllegalArgumentException("Unsatisfiable suffix range " + spec);
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            long start = Long.parseLong(first);
+            long end = length - 1;
+            if (!last.isEmpty()) {
+                long lastPosition = Long.parseLong(last);
+                // An inverted range is invalid syntax, which means the header is ignored
+                if (lastPosition < start) return null;
+                end = Math.min(lastPosition, length - 1);
+            }
+            if (start >= length) throw new IllegalArgumentException("Unsatisfiable range " + spec);
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    // Inclusive, as in Content-Range
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    public String toContentRange(long entityLength) {
+        return "bytes " + start + "-" + end + "/" + entityLength;
+    }
+}
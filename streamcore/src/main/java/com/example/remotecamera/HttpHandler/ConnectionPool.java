@@ -0,0 +1,118 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Bounded pool for accepted connections.
+ * A connection beyond the pool and its short queue is answered with a bare 503 carrying
+ * Retry-After and closed straight away, so a reconnect storm neither spawns threads nor
+ * leaves clients waiting on a silent socket.
+ */
+public class ConnectionPool {
+
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final int retryAfterSeconds;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConnectionPool(int maxThreads, int queueSize, int retryAfterSeconds) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread t = new Thread(r, "NanoHttpd-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // Returns false when the connection was turned away, its socket is closed by then
+    public boolean execute(Runnable handler, Socket socket) {
+        try {
+            executor.execute(handler);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            if (socket != null) reject(socket, retryAfterSeconds);
+            return false;
+        }
+    }
+
+    // Runs on the accept thread, so only what fits the socket's send buffer is written
+    static void reject(Socket socket, int retryAfterSeconds) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(serviceUnavailable(retryAfterSeconds));
+            out.flush();
+            socket.shutdownOutput();
+            // Unread request bytes would turn the close into a reset that can discard the response
+            InputStream in = socket.getInputStream();
+            int available = in.available();
+            if (available > 0) in.skip(available);
+        } catch (IOException e) {
+            // The client is gone already
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    static byte[] serviceUnavailable(int retryAfterSeconds) {
+        return ("HTTP/1.1 503 Service Unavailable\r\n"
+                + "Retry-After: " + retryAfterSeconds + "\r\n"
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        // Grow the maximum first so core never exceeds it
+        if (maxThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxThreads);
+            executor.setCorePoolSize(maxThreads);
+        } else {
+            executor.setCorePoolSize(maxThreads);
+            executor.setMaximumPoolSize(maxThreads);
+        }
+    }
+
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // Every worker is busy and connections are already waiting
+    public boolean isSaturated() {
+        return executor.getQueue().size() > 0;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * text/event-stream body for one Server-Sent Events client, read directly by NanoHTTPD.
+ * Status events describe the whole state, so only the newest unsent one is kept. An SSE
+ * comment is written when nothing changes for a while so dead clients are noticed.
+ */
+public class EventStream extends InputStream {
+
+    private static final byte[] KEEPALIVE = ": keepalive\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final long keepAliveMillis;
+
+    // Guarded by this
+    private byte[] pending;
+    private boolean closed = false;
+
+    // Only touched by the reading thread
+    private byte[] current;
+    private int position = 0;
+
+    public EventStream(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public static byte[] encode(String event, String data) {
+        return ("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Returns false once the client has gone away
+    public synchronized boolean offer(byte[] event) {
+        if (closed) return false;
+        pending = event;
+        notifyAll();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (current == null && !takeNext()) return -1;
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        if (position == current.length) {
+            current = null;
+            position = 0;
+        }
+        return n;
+    }
+
+    private synchronized boolean takeNext() throws IOException {
+        try {
+            if (pending == null && !closed) wait(keepAliveMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an event");
+        }
+        if (closed) return false;
+        current = pending != null ? pending : KEEPALIVE;
+        pending = null;
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Streams a byte range of a file with positional FileChannel reads straight into the
+ * caller's buffer. Nothing proportional to the file or range size is held on the heap, so
+ * any number of concurrent downloads only costs NanoHTTPD's own copy buffer per response.
+ */
+public class FileRangeStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    // Serves [start, start + length) of the file
+    public FileRangeStream(File file, long start, long length) throws IOException {
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        this.position = start;
+        this.end = start + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position >= end) return -1;
+        int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+        // The file was truncated underneath us, end the body instead of spinning
+        if (n <= 0) return -1;
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
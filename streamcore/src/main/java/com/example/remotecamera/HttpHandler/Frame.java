@@ -0,0 +1,57 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.nio.charset.StandardCharsets;
+
+/* Immutable encoded frame shared by every client of the broadcaster */
+public final class Frame {
+
+    private final byte[] data;
+    private final long sequence;
+    private final long timestampMillis;
+    private final long encodeDoneMillis;
+    // Built on first use and then shared by every client streaming this frame
+    private volatile byte[] partHeader;
+
+    public Frame(byte[] data, long sequence, long timestampMillis) {
+        this(data, sequence, timestampMillis, timestampMillis);
+    }
+
+    public Frame(byte[] data, long sequence, long timestampMillis, long encodeDoneMillis) {
+        this.data = data;
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.encodeDoneMillis = encodeDoneMillis;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Wall clock capture time
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    // Wall clock time the JPEG was handed to the broadcaster
+    public long getEncodeDoneMillis() {
+        return encodeDoneMillis;
+    }
+
+    // Sequence and timestamps let clients measure latency and spot skipped frames, see /latency
+    public byte[] getPartHeader() {
+        byte[] header = partHeader;
+        if (header == null) {
+            header = ("Content-Type: image/jpeg\r\nContent-Length: " + data.length
+                    + "\r\nX-Frame-Seq: " + sequence
+                    + "\r\nX-Capture-Ts: " + timestampMillis
+                    + "\r\nX-Encode-Done-Ts: " + encodeDoneMillis + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeader = header;
+        }
+        return header;
+    }
+}
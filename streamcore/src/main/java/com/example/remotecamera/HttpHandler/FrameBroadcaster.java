@@ -0,0 +1,140 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Fans out every published frame to the subscribed clients.
+ * Each subscription keeps its own sequence cursor, so a client is woken once per new frame
+ * and never receives the same frame twice. Delivery runs on a small worker pool, which can be
+ * shared between broadcasters, instead of one thread per client.
+ */
+public class FrameBroadcaster {
+
+    public interface FrameSink {
+        void onFrame(Frame frame) throws IOException;
+
+        void onClosed();
+    }
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService deliveryExecutor;
+    private volatile Frame latest;
+    private long nextSequence = 1;
+
+    public FrameBroadcaster(ExecutorService deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    public static ExecutorService newDeliveryPool(int workerCount) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "MJPEG-fanout-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Frame publish(byte[] data) {
+        return publish(data, System.currentTimeMillis());
+    }
+
+    // timestampMillis is the capture time, the encode time is taken when the frame is published
+    public Frame publish(byte[] data, long timestampMillis) {
+        long encodeDoneMillis = System.currentTimeMillis();
+        Frame frame;
+        synchronized (this) {
+            frame = new Frame(data, nextSequence++, timestampMillis, encodeDoneMillis);
+            latest = frame;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+        return frame;
+    }
+
+    public Frame getLatest() {
+        return latest;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public List<FrameSink> getSinks() {
+        List<FrameSink> sinks = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            sinks.add(subscription.sink);
+        }
+        return sinks;
+    }
+
+    public Subscription subscribe(FrameSink sink) {
+        Subscription subscription = new Subscription(sink);
+        subscriptions.add(subscription);
+        // Hand the current frame to the new client straight away
+        subscription.signal();
+        return subscription;
+    }
+
+    // Closes every subscription, the delivery pool belongs to the caller
+    public void shutdown() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    public final class Subscription {
+        private final FrameSink sink;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        // Only touched by the single drain task that holds the scheduled flag
+        private volatile long lastSequence = 0;
+
+        private Subscription(FrameSink sink) {
+            this.sink = sink;
+        }
+
+        private void signal() {
+            if (closed.get() || !scheduled.compareAndSet(false, true)) return;
+            try {
+                deliveryExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                close();
+            }
+        }
+
+        private void drain() {
+            try {
+                Frame frame;
+                while (!closed.get() && (frame = latest) != null && frame.getSequence() > lastSequence) {
+                    lastSequence = frame.getSequence();
+                    sink.onFrame(frame);
+                }
+            } catch (IOException e) {
+                close();
+            } finally {
+                scheduled.set(false);
+            }
+            // A frame may have been published after the loop check but before the flag was cleared
+            Frame frame = latest;
+            if (frame != null && frame.getSequence() > lastSequence) signal();
+        }
+
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.remove(this);
+                sink.onClosed();
+            }
+        }
+    }
+}
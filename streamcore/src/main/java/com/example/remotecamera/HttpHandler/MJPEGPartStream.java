@@ -0,0 +1,159 @@
+package com.example.remotecamera.HttpHandler;
+
+import com.example.remotecamera.Metrics.PipelineMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * multipart/x-mixed-replace body for one client, read directly by NanoHTTPD.
+ * The broadcaster only hands over a frame reference; the shared JPEG array, its cached part
+ * header and the constant boundary bytes are copied straight into NanoHTTPD's socket buffer.
+ * Only the newest undelivered frame is kept, so a slow client skips frames instead of queueing
+ * them, and an optional fps cap paces each client independently.
+ */
+public class MJPEGPartStream extends InputStream implements FrameBroadcaster.FrameSink {
+
+    private static final byte[] FIRST_BOUNDARY = "--frame\r\n".getBytes(StandardCharsets.US_ASCII);
+    // Closing each part with the next boundary lets browsers render it without waiting
+    private static final byte[] PART_END = "\r\n--frame\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int STAGE_BOUNDARY = 0;
+    private static final int STAGE_HEADER = 1;
+    private static final int STAGE_DATA = 2;
+    private static final int STAGE_END = 3;
+    private static final int STAGE_IDLE = 4;
+
+    private final long keepAliveMillis;
+    private final long minIntervalMillis;
+    private final String clientName;
+
+    // Guarded by this
+    private Frame pending;
+    private boolean closed = false;
+    private long deliveredFrames = 0;
+    private long droppedFrames = 0;
+    private long lastPartStartMillis = 0;
+
+    // Only touched by the reading thread
+    private Frame current;
+    private int stage = STAGE_BOUNDARY;
+    private int position = 0;
+    private long partStartNanos = 0;
+
+    public MJPEGPartStream(String clientName, long keepAliveMillis, int maxFps) {
+        this.clientName = clientName;
+        this.keepAliveMillis = keepAliveMillis;
+        this.minIntervalMillis = maxFps > 0 ? 1000L / maxFps : 0;
+    }
+
+    @Override
+    public synchronized void onFrame(Frame frame) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        // The client has not drained the previous frame yet, newest one wins
+        if (pending != null) {
+            droppedFrames++;
+            PipelineMetrics.FRAMES_DROPPED.increment();
+        }
+        pending = frame;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onClosed() {
+        closed = true;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (stage == STAGE_IDLE && !awaitNextFrame()) return -1;
+
+        byte[] segment = segment();
+        int n = Math.min(len, segment.length - position);
+        System.arraycopy(segment, position, b, off, n);
+        position += n;
+        PipelineMetrics.BYTES_SENT.add(n);
+        if (position == segment.length) {
+            position = 0;
+            // NanoHTTPD writes every chunk before reading the next, so the part has reached the socket
+            if (stage == STAGE_END) PipelineMetrics.CLIENT_SEND.record(System.nanoTime() - partStartNanos);
+            stage = stage == STAGE_END ? STAGE_IDLE : stage + 1;
+            if (stage == STAGE_HEADER && current == null) stage = STAGE_IDLE;
+        }
+        return n;
+    }
+
+    private synchronized boolean awaitNextFrame() throws IOException {
+        try {
+            while (pending == null && !closed) {
+                wait(keepAliveMillis);
+                // Re-send the last frame when the feed is idle so a vanished client is still detected
+                if (pending == null && current != null) break;
+            }
+            // Hold back until the fps cap allows another part, picking up newer frames meanwhile
+            long waitMillis;
+            while (!closed && pending != null
+                    && (waitMillis = lastPartStartMillis + minIntervalMillis - System.currentTimeMillis()) > 0) {
+                wait(waitMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a frame");
+        }
+        if (closed) return false;
+        if (pending != null) {
+            current = pending;
+            pending = null;
+            deliveredFrames++;
+        }
+        lastPartStartMillis = System.currentTimeMillis();
+        partStartNanos = System.nanoTime();
+        stage = STAGE_HEADER;
+        return true;
+    }
+
+    private byte[] segment() {
+        switch (stage) {
+            case STAGE_BOUNDARY:
+                return FIRST_BOUNDARY;
+            case STAGE_HEADER:
+                return current.getPartHeader();
+            case STAGE_DATA:
+                return current.getData();
+            default:
+                return PART_END;
+        }
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public synchronized long getDeliveredFrames() {
+        return deliveredFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public void close() {
+        onClosed();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Static web assets held in memory for the life of the server.
+ * Each asset keeps its raw bytes, a gzip variant when that is smaller, and strong ETags
+ * derived from the content, so requests never touch resources or re-encode text. The two
+ * encodings are different representations and therefore carry different ETags.
+ */
+public class StaticAssetCache {
+
+    public static final class Asset {
+        private final String mimeType;
+        private final byte[] data;
+        private final byte[] gzipData;
+        private final String etag;
+        private final String gzipETag;
+
+        private Asset(String mimeType, byte[] data, byte[] gzipData, String hash) {
+            this.mimeType = mimeType;
+            this.data = data;
+            this.gzipData = gzipData;
+            this.etag = "\"" + hash + "\"";
+            this.gzipETag = gzipData != null ? "\"" + hash + "-gz\"" : null;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        // Null when compression would not make the asset smaller
+        public byte[] getGzipData() {
+            return gzipData;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        // Null when there is no gzip variant
+        public String getGzipETag() {
+            return gzipETag;
+        }
+    }
+
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public Asset put(String name, String mimeType, byte[] data, boolean compress) throws IOException {
+        byte[] gzipData = compress ? gzip(data) : null;
+        if (gzipData != null && gzipData.length >= data.length) gzipData = null;
+        Asset asset = new Asset(mimeType, data, gzipData, digest(data));
+        assets.put(name, asset);
+        return asset;
+    }
+
+    public Asset get(String name) {
+        return assets.get(name);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
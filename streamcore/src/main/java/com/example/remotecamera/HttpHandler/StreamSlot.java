@@ -0,0 +1,40 @@
+package com.example.remotecamera.HttpHandler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Holds one of the server's concurrent stream slots until NanoHTTPD closes the body */
+public class StreamSlot extends FilterInputStream {
+
+    private final AtomicInteger activeStreams;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    // The slot must already have been taken with tryReserve
+    public StreamSlot(InputStream body, AtomicInteger activeStreams) {
+        super(body);
+        this.activeStreams = activeStreams;
+    }
+
+    public static boolean tryReserve(AtomicInteger activeStreams, int maxStreams) {
+        int current;
+        do {
+            current = activeStreams.get();
+            if (current >= maxStreams) return false;
+        } while (!activeStreams.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return in.read(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (released.compareAndSet(false, true)) activeStreams.decrementAndGet();
+        super.close();
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.remotecamera.Imaging;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Cheap motion detector on a coarse luma grid.
+ * Every frame samples a few pixels per grid cell straight from the Y plane, compares the cell
+ * means with a slowly adapting background and reports motion when enough cells changed.
+ * Motion is held for a short while after the last changed frame so brief pauses do not flap,
+ * and each motion period is kept as an event in a small fixed ring. Nothing is allocated per frame.
+ */
+public class MotionDetector {
+
+    public static final int GRID_COLUMNS = 32;
+    public static final int GRID_ROWS = 24;
+    private static final int CELLS = GRID_COLUMNS * GRID_ROWS;
+    private static final int SAMPLES_PER_AXIS = 4;
+    // Background is kept in 1/16 luma steps and moves 1/8 of the way to each new frame
+    private static final int FIXED_SHIFT = 4;
+    private static final int ADAPT_SHIFT = 3;
+    private static final int MAX_EVENTS = 32;
+
+    public static final int DEFAULT_CELL_THRESHOLD = 12;
+    public static final int DEFAULT_MIN_CHANGED_CELLS = 6;
+    public static final long DEFAULT_HOLD_MILLIS = 3_000;
+
+    private final int cellThreshold;
+    private final int minChangedCells;
+    private final long holdMillis;
+    private final int[] background = new int[CELLS];
+    // Sample offsets inside the frame, rebuilt when the frame size changes
+    private final int[] sampleColumns = new int[GRID_COLUMNS * SAMPLES_PER_AXIS];
+    private final int[] sampleRows = new int[GRID_ROWS * SAMPLES_PER_AXIS];
+    private int width = 0;
+    private int height = 0;
+    private boolean primed = false;
+
+    private boolean motion = false;
+    private int changedCells = 0;
+    private long lastMotionMillis = 0;
+
+    // Event ring, the newest event may still be open (end == 0)
+    private final long[] eventIds = new long[MAX_EVENTS];
+    private final long[] eventStarts = new long[MAX_EVENTS];
+    private final long[] eventEnds = new long[MAX_EVENTS];
+    private final int[] eventPeaks = new int[MAX_EVENTS];
+    private int eventCount = 0;
+    private int eventHead = 0;
+    private long nextEventId = 1;
+
+    public MotionDetector() {
+        this(DEFAULT_CELL_THRESHOLD, DEFAULT_MIN_CHANGED_CELLS, DEFAULT_HOLD_MILLIS);
+    }
+
+    public MotionDetector(int cellThreshold, int minChangedCells, long holdMillis) {
+        if (cellThreshold <= 0) throw new IllegalArgumentException("Cell threshold must be positive: " + cellThreshold);
+        if (minChangedCells <= 0 || minChangedCells > CELLS) {
+            throw new IllegalArgumentException("Changed cell count must be 1-" + CELLS + ": " + minChangedCells);
+        }
+        this.cellThreshold = cellThreshold;
+        this.minChangedCells = minChangedCells;
+        this.holdMillis = holdMillis;
+    }
+
+    // Reads the Y plane with absolute gets, its position is left untouched
+    public synchronized boolean update(ByteBuffer yPlane, int rowStride, int width, int height, long nowMillis) {
+        if (width != this.width || height != this.height) configure(width, height);
+
+        int base = yPlane.position();
+        int changed = 0;
+        for (int gridRow = 0; gridRow < GRID_ROWS; gridRow++) {
+            for (int gridColumn = 0; gridColumn < GRID_COLUMNS; gridColumn++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_AXIS; sy++) {
+                    int rowOffset = base + sampleRows[gridRow * SAMPLES_PER_AXIS + sy] * rowStride;
+                    for (int sx = 0; sx < SAMPLES_PER_AXIS; sx++) {
+                        sum += yPlane.get(rowOffset + sampleColumns[gridColumn * SAMPLES_PER_AXIS + sx]) & 0xFF;
+                    }
+                }
+                // Mean of the 16 samples in background fixed point
+                int mean = sum << FIXED_SHIFT >> 4;
+                int cell = gridRow * GRID_COLUMNS + gridColumn;
+                if (!primed) {
+                    background[cell] = mean;
+                    continue;
+                }
+                if (Math.abs(mean - background[cell]) > cellThreshold << FIXED_SHIFT) changed++;
+                background[cell] += (mean - background[cell]) >> ADAPT_SHIFT;
+            }
+        }
+        primed = true;
+        changedCells = changed;
+
+        if (changed >= minChangedCells) {
+            lastMotionMillis = nowMillis;
+            if (!motion) openEvent(nowMillis);
+            motion = true;
+            int newest = (eventHead + MAX_EVENTS - 1) % MAX_EVENTS;
+            eventPeaks[newest] = Math.max(eventPeaks[newest], changed);
+        } else if (motion && nowMillis - lastMotionMillis > holdMillis) {
+            motion = false;
+            eventEnds[(eventHead + MAX_EVENTS - 1) % MAX_EVENTS] = lastMotionMillis;
+        }
+        return motion;
+    }
+
+    private void configure(int width, int height) {
+        this.width = width;
+        this.height = height;
+        // Samples sit in the middle of evenly spaced sub-cells
+        int columns = GRID_COLUMNS * SAMPLES_PER_AXIS;
+        for (int i = 0; i < columns; i++) {
+            sampleColumns[i] = (int) ((2L * i + 1) * width / (2L * columns));
+        }
+        int rows = GRID_ROWS * SAMPLES_PER_AXIS;
+        for (int i = 0; i < rows; i++) {
+            sampleRows[i] = (int) ((2L * i + 1) * height / (2L * rows));
+        }
+        primed = false;
+    }
+
+    private void openEvent(long nowMillis) {
+        eventIds[eventHead] = nextEventId++;
+        eventStarts[eventHead] = nowMillis;
+        eventEnds[eventHead] = 0;
+        eventPeaks[eventHead] = 0;
+        eventHead = (eventHead + 1) % MAX_EVENTS;
+        eventCount = Math.min(eventCount + 1, MAX_EVENTS);
+    }
+
+    public synchronized boolean isMotion() {
+        return motion;
+    }
+
+    public synchronized int getChangedCells() {
+        return changedCells;
+    }
+
+    public static int getCellCount() {
+        return CELLS;
+    }
+
+    // Appends the retained events newer than afterId as a JSON array, oldest first
+    public synchronized void appendEventsJson(StringBuilder out, long afterId) {
+        out.append('[');
+        boolean first = true;
+        for (int i = 0; i < eventCount; i++) {
+            int index = (eventHead - eventCount + i + MAX_EVENTS) % MAX_EVENTS;
+            if (eventIds[index] <= afterId) continue;
+            if (!first) out.append(',');
+            first = false;
+            out.append("{\"id\":").append(eventIds[index])
+                    .append(",\"start\":").append(eventStarts[index])
+                    .append(",\"end\":").append(eventEnds[index] == 0 ? "null" : Long.toString(eventEnds[index]))
+                    .append(",\"peakCells\":").append(eventPeaks[index])
+                    .append('}');
+        }
+        out.append(']');
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.remotecamera.Imaging;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Converts YUV_420_888 planes into NV21, reusing one output buffer across frames.
+ * Row and pixel strides are honoured, and when the V plane already holds interleaved VU
+ * samples (pixelStride == 2 on most devices) the chroma rows are bulk copied.
+ * The returned array is overwritten by the next call, unless the caller supplies its own.
+ */
+public class NV21Converter {
+
+    private static final int LAYOUT_UNKNOWN = 0;
+    private static final int LAYOUT_INTERLEAVED_VU = 1;
+    private static final int LAYOUT_GENERIC = 2;
+
+    private byte[] buffer = new byte[0];
+    // Output of the conversion in progress
+    private byte[] nv21;
+    private int width = 0;
+    private int height = 0;
+    private int uvRowStride = 0;
+    private int uvPixelStride = 0;
+    private int chromaLayout = LAYOUT_UNKNOWN;
+
+    public byte[] convert(ByteBuffer yBuffer, int yRowStride,
+                          ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                          int width, int height) {
+        int size = width * height * 3 / 2;
+        if (buffer.length != size) buffer = new byte[size];
+        return convert(yBuffer, yRowStride, uBuffer, vBuffer, uvRowStride, uvPixelStride, width, height, buffer);
+    }
+
+    // Writes into the caller's buffer, e.g. one from a pool so several frames can be in flight
+    public byte[] convert(ByteBuffer yBuffer, int yRowStride,
+                          ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                          int width, int height, byte[] output) {
+        if (output.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("Output buffer too small for " + width + "x" + height);
+        }
+        configure(width, height, uvRowStride, uvPixelStride);
+        nv21 = output;
+
+        int yPosition = yBuffer.position();
+        int uPosition = uBuffer.position();
+        int vPosition = vBuffer.position();
+
+        copyLuma(yBuffer, yRowStride);
+        if (chromaLayout == LAYOUT_UNKNOWN) {
+            chromaLayout = detectChromaLayout(uBuffer, vBuffer);
+        }
+        if (chromaLayout == LAYOUT_INTERLEAVED_VU) {
+            copyInterleavedChroma(uBuffer, vBuffer);
+        } else {
+            copyGenericChroma(uBuffer, vBuffer);
+        }
+
+        yBuffer.position(yPosition);
+        uBuffer.position(uPosition);
+        vBuffer.position(vPosition);
+        nv21 = null;
+        return output;
+    }
+
+    private void configure(int width, int height, int uvRowStride, int uvPixelStride) {
+        if (width == this.width && height == this.height
+                && uvRowStride == this.uvRowStride && uvPixelStride == this.uvPixelStride) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        chromaLayout = uvPixelStride == 2 ? LAYOUT_UNKNOWN : LAYOUT_GENERIC;
+    }
+
+    private void copyLuma(ByteBuffer yBuffer, int yRowStride) {
+        int start = yBuffer.position();
+        if (yRowStride == width) {
+            yBuffer.get(nv21, 0, width * height);
+            return;
+        }
+        // Skip the padding at the end of every row
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(start + row * yRowStride);
+            yBuffer.get(nv21, row * width, width);
+        }
+    }
+
+    /*
+     * With pixelStride == 2 the V plane is interleaved VU data exactly when every U sample
+     * equals the byte following its V sample. A flat chroma plane cannot tell the two apart,
+     * so the check is repeated until a frame with some colour variation decides it.
+     */
+    private int detectChromaLayout(ByteBuffer uBuffer, ByteBuffer vBuffer) {
+        int length = Math.min(vBuffer.remaining() - 1, uBuffer.remaining());
+        if (length <= 0) return LAYOUT_GENERIC;
+
+        ByteBuffer shiftedV = vBuffer.duplicate();
+        shiftedV.position(vBuffer.position() + 1);
+        shiftedV.limit(shiftedV.position() + length);
+        ByteBuffer u = uBuffer.duplicate();
+        u.limit(u.position() + length);
+        if (shiftedV.compareTo(u) != 0) return LAYOUT_GENERIC;
+
+        byte first = uBuffer.get(uBuffer.position());
+        for (int i = uBuffer.position() + 1; i < uBuffer.position() + length; i++) {
+            if (uBuffer.get(i) != first) return LAYOUT_INTERLEAVED_VU;
+        }
+        return LAYOUT_UNKNOWN;
+    }
+
+    private void copyInterleavedChroma(ByteBuffer uBuffer, ByteBuffer vBuffer) {
+        int chromaHeight = height / 2;
+        int rowBytes = (width / 2) * 2;
+        int vStart = vBuffer.position();
+        int uStart = uBuffer.position();
+        int offset = width * height;
+
+        if (uvRowStride == rowBytes) {
+            copyChromaRun(uBuffer, vBuffer, uStart, vStart, offset, rowBytes * chromaHeight);
+            return;
+        }
+        for (int row = 0; row < chromaHeight; row++) {
+            copyChromaRun(uBuffer, vBuffer, uStart + row * uvRowStride, vStart + row * uvRowStride,
+                    offset + row * width, rowBytes);
+        }
+    }
+
+    private void copyChromaRun(ByteBuffer uBuffer, ByteBuffer vBuffer, int uIndex, int vIndex, int offset, int length) {
+        // The V plane usually stops one byte short of the final U sample
+        int available = Math.min(length, vBuffer.limit() - vIndex);
+        vBuffer.position(vIndex);
+        vBuffer.get(nv21, offset, available);
+        if (available < length) {
+            nv21[offset + length - 1] = uBuffer.get(uIndex + length - 2);
+        }
+    }
+
+    private void copyGenericChroma(ByteBuffer uBuffer, ByteBuffer vBuffer) {
+        int chromaHeight = height / 2;
+        int chromaWidth = width / 2;
+        int uStart = uBuffer.position();
+        int vStart = vBuffer.position();
+        int uvPos = width * height;
+
+        for (int row = 0; row < chromaHeight; row++) {
+            int rowOffset = row * uvRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int index = rowOffset + col * uvPixelStride;
+                nv21[uvPos++] = vBuffer.get(vStart + index); // V
+                nv21[uvPos++] = uBuffer.get(uStart + index); // U
+            }
+        }
+    }
+}
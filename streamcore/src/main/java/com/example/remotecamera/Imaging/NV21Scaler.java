@@ -0,0 +1,77 @@
+package com.example.remotecamera.Imaging;
+
+/*
+ * Nearest-neighbour downscaler for NV21 frames.
+ * Column lookup tables and the output buffer are kept until the source or target size changes,
+ * so scaling a stream allocates nothing per frame. The returned array is overwritten by the next call.
+ */
+public class NV21Scaler {
+
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+    private int targetWidth = 0;
+    private int targetHeight = 0;
+    private int[] lumaColumns = new int[0];
+    private int[] chromaColumns = new int[0];
+    private byte[] output = new byte[0];
+
+    // Target height follows the source aspect ratio, both sides rounded down to even
+    public static int scaledHeight(int sourceWidth, int sourceHeight, int targetWidth) {
+        return Math.max(2, (int) ((long) sourceHeight * targetWidth / sourceWidth) & ~1);
+    }
+
+    public byte[] scale(byte[] nv21, int sourceWidth, int sourceHeight, int requestedWidth) {
+        configure(sourceWidth, sourceHeight, Math.max(2, requestedWidth & ~1));
+
+        for (int row = 0; row < targetHeight; row++) {
+            int sourceRow = (int) ((long) row * sourceHeight / targetHeight) * sourceWidth;
+            int targetRow = row * targetWidth;
+            for (int col = 0; col < targetWidth; col++) {
+                output[targetRow + col] = nv21[sourceRow + lumaColumns[col]];
+            }
+        }
+
+        int sourceChroma = sourceWidth * sourceHeight;
+        int targetChroma = targetWidth * targetHeight;
+        int chromaRows = targetHeight / 2;
+        for (int row = 0; row < chromaRows; row++) {
+            int sourceRow = sourceChroma + (int) ((long) row * (sourceHeight / 2) / chromaRows) * sourceWidth;
+            int targetRow = targetChroma + row * targetWidth;
+            for (int col = 0; col < targetWidth; col += 2) {
+                int sourceIndex = sourceRow + chromaColumns[col >> 1];
+                output[targetRow + col] = nv21[sourceIndex];         // V
+                output[targetRow + col + 1] = nv21[sourceIndex + 1]; // U
+            }
+        }
+        return output;
+    }
+
+    private void configure(int sourceWidth, int sourceHeight, int targetWidth) {
+        if (sourceWidth == this.sourceWidth && sourceHeight == this.sourceHeight && targetWidth == this.targetWidth) {
+            return;
+        }
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.targetWidth = targetWidth;
+        this.targetHeight = scaledHeight(sourceWidth, sourceHeight, targetWidth);
+
+        lumaColumns = new int[targetWidth];
+        for (int col = 0; col < targetWidth; col++) {
+            lumaColumns[col] = (int) ((long) col * sourceWidth / targetWidth);
+        }
+        chromaColumns = new int[targetWidth / 2];
+        for (int col = 0; col < chromaColumns.length; col++) {
+            // Byte offset of the VU pair within a chroma row
+            chromaColumns[col] = (int) ((long) col * (sourceWidth / 2) / chromaColumns.length) * 2;
+        }
+        output = new byte[targetWidth * targetHeight * 3 / 2];
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.remotecamera.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/* Monotonic counter that can be incremented from any thread without locks or allocation */
+public final class Counter {
+
+    private final String name;
+    private final String help;
+    private final LongAdder value = new LongAdder();
+
+    public Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    public void render(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value.sum()).append('\n');
+    }
+}
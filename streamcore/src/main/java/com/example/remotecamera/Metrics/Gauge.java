@@ -0,0 +1,28 @@
+package com.example.remotecamera.Metrics;
+
+/* Last value of a level such as a queue depth, set by one thread and read by /metrics */
+public final class Gauge {
+
+    private final String name;
+    private final String help;
+    private volatile long value = 0;
+
+    public Gauge(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void render(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.remotecamera.Metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Fixed-bucket histogram that can be recorded from any thread without locks or allocation.
+ * Values are recorded in a raw unit (e.g. nanoseconds) and divided down to the base unit when rendered.
+ */
+public final class Histogram {
+
+    private final String name;
+    private final String help;
+    private final long[] bounds;
+    private final double unitsPerBase;
+    // One slot per bound plus the +Inf bucket
+    private final AtomicLongArray buckets;
+    private final LongAdder sum = new LongAdder();
+    private final LongAdder count = new LongAdder();
+
+    public Histogram(String name, String help, long[] bounds, long unitsPerBase) {
+        this.name = name;
+        this.help = help;
+        this.bounds = bounds.clone();
+        this.unitsPerBase = unitsPerBase;
+        this.buckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void record(long value) {
+        int index = 0;
+        while (index < bounds.length && value > bounds[index]) index++;
+        buckets.incrementAndGet(index);
+        sum.add(value);
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public void render(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets.get(i);
+            out.append(name).append("_bucket{le=\"").append(bounds[i] / unitsPerBase).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets.get(bounds.length);
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sum.sum() / unitsPerBase).append('\n');
+        out.append(name).append("_count ").append(count.sum()).append('\n');
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.remotecamera.Metrics;
+
+/* Process-wide metrics for the capture and streaming pipeline, rendered by /metrics */
+public final class PipelineMetrics {
+
+    private static final long MS = 1_000_000L;
+    private static final long[] LATENCY_BUCKETS_NS = {
+            MS, 2 * MS, 5 * MS, 10 * MS, 20 * MS, 33 * MS, 50 * MS, 100 * MS, 200 * MS, 500 * MS, 1000 * MS, 5000 * MS
+    };
+    private static final long[] SIZE_BUCKETS_BYTES = {
+            16 * 1024, 32 * 1024, 64 * 1024, 128 * 1024, 256 * 1024, 512 * 1024, 1024 * 1024, 2048 * 1024
+    };
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    public static final Histogram CAPTURE_TO_ANALYZER = new Histogram("remotecamera_capture_to_analyzer_seconds",
+            "Time from sensor exposure to the analyzer receiving the frame", LATENCY_BUCKETS_NS, NANOS_PER_SECOND);
+    public static final Histogram NV21_CONVERSION = new Histogram("remotecamera_nv21_conversion_seconds",
+            "YUV_420_888 to NV21 conversion time", LATENCY_BUCKETS_NS, NANOS_PER_SECOND);
+    public static final Histogram OVERLAY = new Histogram("remotecamera_overlay_seconds",
+            "Time spent drawing the timestamp and battery overlay", LATENCY_BUCKETS_NS, NANOS_PER_SECOND);
+    public static final Histogram JPEG_ENCODE = new Histogram("remotecamera_jpeg_encode_seconds",
+            "Full resolution JPEG encode time", LATENCY_BUCKETS_NS, NANOS_PER_SECOND);
+    public static final Histogram FRAME_SIZE = new Histogram("remotecamera_frame_size_bytes",
+            "Size of encoded full resolution JPEG frames", SIZE_BUCKETS_BYTES, 1);
+    public static final Histogram CLIENT_SEND = new Histogram("remotecamera_client_send_seconds",
+            "Time for one MJPEG part to be written to a client", LATENCY_BUCKETS_NS, NANOS_PER_SECOND);
+
+    public static final Counter FRAMES_PUBLISHED = new Counter("remotecamera_frames_published_total",
+            "Frames published to the MJPEG broadcaster");
+    public static final Counter FRAMES_DROPPED = new Counter("remotecamera_frames_dropped_total",
+            "Frames skipped for a client because it had not drained the previous one");
+    public static final Counter BYTES_SENT = new Counter("remotecamera_bytes_sent_total",
+            "MJPEG stream bytes handed to client sockets");
+    public static final Counter PIPELINE_DROPPED = new Counter("remotecamera_pipeline_dropped_frames_total",
+            "Camera frames dropped because every processing buffer was in flight");
+    public static final Counter PIPELINE_ERRORS = new Counter("remotecamera_pipeline_stage_errors_total",
+            "Overlay, encode or publish stage calls that failed");
+
+    public static final Gauge OVERLAY_QUEUE = new Gauge("remotecamera_overlay_queue_depth",
+            "Converted frames waiting for the overlay stage");
+    public static final Gauge ENCODE_QUEUE = new Gauge("remotecamera_encode_queue_depth",
+            "Frames waiting for a JPEG encode worker");
+    public static final Gauge PUBLISH_QUEUE = new Gauge("remotecamera_publish_queue_depth",
+            "Encoded frames waiting to be published in sequence order");
+
+    private PipelineMetrics() {}
+
+    public static void render(StringBuilder out) {
+        CAPTURE_TO_ANALYZER.render(out);
+        NV21_CONVERSION.render(out);
+        OVERLAY.render(out);
+        JPEG_ENCODE.render(out);
+        FRAME_SIZE.render(out);
+        CLIENT_SEND.render(out);
+        FRAMES_PUBLISHED.render(out);
+        FRAMES_DROPPED.render(out);
+        BYTES_SENT.render(out);
+        PIPELINE_DROPPED.render(out);
+        PIPELINE_ERRORS.render(out);
+        OVERLAY_QUEUE.render(out);
+        ENCODE_QUEUE.render(out);
+        PUBLISH_QUEUE.render(out);
+    }
+
+    public static void renderGauge(StringBuilder out, String name, String help, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.remotecamera.Pipeline;
+
+import com.example.remotecamera.Metrics.Gauge;
+import com.example.remotecamera.Metrics.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Staged processing of converted camera frames: overlay -> encode -> publish.
+ * Stages hand frames over through bounded queues and run on their own threads, with the JPEG
+ * encode spread over a small worker pool, so consecutive frames use several cores at once.
+ * Frames are numbered on submission and the publish stage releases them strictly in that
+ * order. NV21 buffers come from a fixed pool; while all of them are in flight the pipeline is
+ * full and the analyzer drops the frame before converting it.
+ */
+public class FramePipeline {
+
+    public interface Stages {
+        // Overlay thread, in sequence order; raw NV21 consumers may read the buffer here
+        void overlay(FrameJob job);
+
+        // Any encode worker, null publishes nothing for this frame
+        byte[] encode(FrameJob job);
+
+        // Publish thread, in sequence order; the NV21 buffer is already back in the pool
+        void publish(FrameJob job, byte[] jpeg);
+
+        // Stage thread of the failed call, only when the failure differs from the previous one
+        void onError(String stage, Throwable error);
+    }
+
+    public static final class FrameJob implements Comparable<FrameJob> {
+        private final long sequence;
+        private final int width;
+        private final int height;
+        private final long timestampNs;
+        private final long captureMillis;
+        private final boolean encode;
+        private byte[] data;
+        private byte[] jpeg;
+
+        private FrameJob(long sequence, byte[] data, int width, int height, long timestampNs, long captureMillis, boolean encode) {
+            this.sequence = sequence;
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.timestampNs = timestampNs;
+            this.captureMillis = captureMillis;
+            this.encode = encode;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        // Null once the frame has been encoded
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getTimestampNs() {
+            return timestampNs;
+        }
+
+        public long getCaptureMillis() {
+            return captureMillis;
+        }
+
+        public boolean isEncode() {
+            return encode;
+        }
+
+        @Override
+        public int compareTo(FrameJob other) {
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final int STAGE_QUEUE = 2;
+
+    private final Stages stages;
+    private final int bufferCount;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final BlockingQueue<FrameJob> overlayQueue = new ArrayBlockingQueue<>(STAGE_QUEUE);
+    private final BlockingQueue<FrameJob> encodeQueue = new ArrayBlockingQueue<>(STAGE_QUEUE);
+    private final BlockingQueue<FrameJob> publishQueue;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+    private volatile String lastError = null;
+
+    // Only touched by the submitting thread
+    private int allocatedBuffers = 0;
+    private long nextSequence = 0;
+
+    public FramePipeline(Stages stages, int encodeWorkers) {
+        if (encodeWorkers < 1) throw new IllegalArgumentException("At least one encode worker is required");
+        this.stages = stages;
+        // Enough for every queue slot and every stage thread to hold a frame
+        this.bufferCount = 2 * STAGE_QUEUE + 1 + encodeWorkers;
+        this.freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        this.publishQueue = new ArrayBlockingQueue<>(bufferCount);
+        threads.add(new Thread(this::overlayLoop, "Pipeline-overlay"));
+        for (int i = 1; i <= encodeWorkers; i++) {
+            threads.add(new Thread(this::encodeLoop, "Pipeline-encode-" + i));
+        }
+        threads.add(new Thread(this::publishLoop, "Pipeline-publish"));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Half the cores, leaving room for the analyzer, overlay, publish and the HTTP workers
+    public static int defaultEncodeWorkers() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // Null while every buffer is in flight, the caller drops the frame
+    public byte[] acquireBuffer(int size) {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null && allocatedBuffers < bufferCount) {
+            allocatedBuffers++;
+            buffer = new byte[size];
+        }
+        if (buffer == null) {
+            PipelineMetrics.PIPELINE_DROPPED.increment();
+            return null;
+        }
+        // Resolution changed, the old buffer is replaced
+        return buffer.length == size ? buffer : new byte[size];
+    }
+
+    // Takes over a buffer from acquireBuffer and never blocks; false when the frame was dropped
+    public boolean submit(byte[] data, int width, int height, long timestampNs, long captureMillis, boolean encode) {
+        if (!running || !overlayQueue.offer(new FrameJob(nextSequence, data, width, height, timestampNs, captureMillis, encode))) {
+            freeBuffers.offer(data);
+            PipelineMetrics.PIPELINE_DROPPED.increment();
+            return false;
+        }
+        nextSequence++;
+        PipelineMetrics.OVERLAY_QUEUE.set(overlayQueue.size());
+        return true;
+    }
+
+    private void overlayLoop() {
+        try {
+            while (running) {
+                FrameJob job = take(overlayQueue, PipelineMetrics.OVERLAY_QUEUE);
+                try {
+                    stages.overlay(job);
+                } catch (Throwable e) {
+                    stageFailed("overlay", e);
+                }
+                put(encodeQueue, job, PipelineMetrics.ENCODE_QUEUE);
+            }
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    private void encodeLoop() {
+        try {
+            while (running) {
+                FrameJob job = take(encodeQueue, PipelineMetrics.ENCODE_QUEUE);
+                try {
+                    if (job.encode) job.jpeg = stages.encode(job);
+                } catch (Throwable e) {
+                    // Errors too, e.g. OOM on a large frame, the job must still reach the publish stage
+                    stageFailed("encode", e);
+                } finally {
+                    freeBuffers.offer(job.data);
+                    job.data = null;
+                }
+                // Every job reaches the publish stage, otherwise later frames would wait for it forever
+                put(publishQueue, job, PipelineMetrics.PUBLISH_QUEUE);
+            }
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    private void publishLoop() {
+        PriorityQueue<FrameJob> reorder = new PriorityQueue<>();
+        long expected = 0;
+        try {
+            while (running) {
+                reorder.add(take(publishQueue, PipelineMetrics.PUBLISH_QUEUE));
+                while (!reorder.isEmpty() && reorder.peek().sequence == expected) {
+                    FrameJob job = reorder.poll();
+                    expected++;
+                    if (job.jpeg == null) continue;
+                    try {
+                        stages.publish(job, job.jpeg);
+                    } catch (Throwable e) {
+                        stageFailed("publish", e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    // Every failure is counted, repeats of the same one are not reported again so the log is not flooded
+    private void stageFailed(String stage, Throwable error) {
+        PipelineMetrics.PIPELINE_ERRORS.increment();
+        String description = stage + ": " + error;
+        if (description.equals(lastError)) return;
+        lastError = description;
+        try {
+            stages.onError(stage, error);
+        } catch (RuntimeException ignored) {
+            // Reporting must never stop a stage thread
+        }
+    }
+
+    private static FrameJob take(BlockingQueue<FrameJob> queue, Gauge depth) throws InterruptedException {
+        FrameJob job = queue.take();
+        depth.set(queue.size());
+        return job;
+    }
+
+    private static void put(BlockingQueue<FrameJob> queue, FrameJob job, Gauge depth) throws InterruptedException {
+        queue.put(job);
+        depth.set(queue.size());
+    }
+
+    public int getOverlayQueueDepth() {
+        return overlayQueue.size();
+    }
+
+    public int getEncodeQueueDepth() {
+        return encodeQueue.size();
+    }
+
+    public int getPublishQueueDepth() {
+        return publishQueue.size();
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    // Frames still queued are discarded
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.remotecamera.Recording;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Streams a set of ring buffer frames as an MJPEG AVI file without materialising it.
+ * The frame list and therefore the file size are fixed up front. Each frame is copied out of
+ * the ring only when its chunk starts; a frame evicted before that is replaced by a JUNK chunk
+ * of the same size and left out of the index, so the declared length always holds.
+ */
+public class AviClipStream extends InputStream {
+
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    private static final int HDRL_SIZE = 192;
+    private static final int HEADER_SIZE = 12 + 8 + HDRL_SIZE + 12;
+    private static final long DEFAULT_FRAME_MICROS = 100_000;
+
+    private final FrameRingBuffer ring;
+    private final long[] sequences;
+    private final int[] lengths;
+    private final int frameCount;
+    private final byte[] frameBuffer;
+    private final boolean[] missing;
+    private final long totalLength;
+
+    // Current piece being read out: header, chunk header, frame (or junk) data, index
+    private final ByteBuffer header;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer index;
+    private int frame = -1;
+    private int dataPosition = 0;
+    private int dataLength = 0;
+    private boolean junk = false;
+
+    public AviClipStream(FrameRingBuffer ring, long[] sequences, int[] lengths, long[] timestamps, int frameCount) {
+        this.ring = ring;
+        this.sequences = sequences;
+        this.lengths = lengths;
+        this.frameCount = frameCount;
+        this.missing = new boolean[frameCount];
+
+        int maxLength = 0;
+        long moviLength = 4;
+        for (int i = 0; i < frameCount; i++) {
+            maxLength = Math.max(maxLength, lengths[i]);
+            moviLength += 8 + padded(lengths[i]);
+        }
+        // One spare byte for the pad after an odd sized frame
+        this.frameBuffer = new byte[maxLength + 1];
+
+        long frameMicros = frameCount > 1
+                ? Math.max(1, (timestamps[frameCount - 1] - timestamps[0]) * 1000 / (frameCount - 1))
+                : DEFAULT_FRAME_MICROS;
+        int[] size = findFrameSize();
+        long indexLength = 8 + 16L * frameCount;
+        this.totalLength = HEADER_SIZE + moviLength - 4 + indexLength;
+        this.header = buildHeader(totalLength, moviLength, frameMicros, maxLength, size[0], size[1]);
+    }
+
+    // Dimensions from the first frame still in the ring
+    private int[] findFrameSize() {
+        for (int i = 0; i < frameCount; i++) {
+            if (ring.copyFrame(sequences[i], frameBuffer)) {
+                int[] size = readJpegSize(frameBuffer, lengths[i]);
+                if (size != null) return size;
+            }
+        }
+        return new int[]{0, 0};
+    }
+
+    // Width and height from the first SOF marker, null if there is none
+    static int[] readJpegSize(byte[] jpeg, int length) {
+        int i = 2;
+        while (i + 9 < length) {
+            if ((jpeg[i] & 0xFF) != 0xFF) return null;
+            int marker = jpeg[i + 1] & 0xFF;
+            int segmentLength = ((jpeg[i + 2] & 0xFF) << 8) | (jpeg[i + 3] & 0xFF);
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                int height = ((jpeg[i + 5] & 0xFF) << 8) | (jpeg[i + 6] & 0xFF);
+                int width = ((jpeg[i + 7] & 0xFF) << 8) | (jpeg[i + 8] & 0xFF);
+                return new int[]{width, height};
+            }
+            i += 2 + segmentLength;
+        }
+        return null;
+    }
+
+    private ByteBuffer buildHeader(long totalLength, long moviLength, long frameMicros, int maxLength, int width, int height) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        fourCC(b, "RIFF").putInt((int) (totalLength - 8));
+        fourCC(b, "AVI ");
+        fourCC(b, "LIST").putInt(HDRL_SIZE);
+        fourCC(b, "hdrl");
+
+        fourCC(b, "avih").putInt(56);
+        b.putInt((int) frameMicros);
+        b.putInt((int) Math.min(Integer.MAX_VALUE, maxLength * (1_000_000L / frameMicros + 1)));
+        b.putInt(0);
+        b.putInt(AVIF_HASINDEX);
+        b.putInt(frameCount);
+        b.putInt(0);
+        b.putInt(1);
+        b.putInt(maxLength);
+        b.putInt(width);
+        b.putInt(height);
+        b.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        fourCC(b, "LIST").putInt(116);
+        fourCC(b, "strl");
+        fourCC(b, "strh").putInt(56);
+        fourCC(b, "vids");
+        fourCC(b, "MJPG");
+        b.putInt(0);
+        b.putShort((short) 0).putShort((short) 0);
+        b.putInt(0);
+        // Rate / scale gives the frame rate
+        b.putInt((int) frameMicros);
+        b.putInt(1_000_000);
+        b.putInt(0);
+        b.putInt(frameCount);
+        b.putInt(maxLength);
+        b.putInt(-1);
+        b.putInt(0);
+        b.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+
+        fourCC(b, "strf").putInt(40);
+        b.putInt(40);
+        b.putInt(width);
+        b.putInt(height);
+        b.putShort((short) 1);
+        b.putShort((short) 24);
+        fourCC(b, "MJPG");
+        b.putInt(width * height * 3);
+        b.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        fourCC(b, "LIST").putInt((int) moviLength);
+        fourCC(b, "movi");
+        b.flip();
+        return b;
+    }
+
+    private static ByteBuffer fourCC(ByteBuffer b, String code) {
+        return b.put(code.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // RIFF chunks are word aligned
+    private static int padded(int length) {
+        return length + (length & 1);
+    }
+
+    public long getLength() {
+        return totalLength;
+    }
+
+    @Override
+    public int read() {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (header.hasRemaining()) return drain(header, b, off, len);
+        while (true) {
+            if (chunkHeader.hasRemaining() && frame >= 0 && frame < frameCount) {
+                return drain(chunkHeader, b, off, len);
+            }
+            if (frame >= 0 && frame < frameCount && dataPosition < dataLength) {
+                int n = Math.min(len, dataLength - dataPosition);
+                if (junk) {
+                    Arrays.fill(b, off, off + n, (byte) 0);
+                } else {
+                    System.arraycopy(frameBuffer, dataPosition, b, off, n);
+                }
+                dataPosition += n;
+                return n;
+            }
+            if (frame < frameCount) {
+                nextFrame();
+                continue;
+            }
+            if (index == null) index = buildIndex();
+            if (index.hasRemaining()) return drain(index, b, off, len);
+            return -1;
+        }
+    }
+
+    private void nextFrame() {
+        frame++;
+        if (frame >= frameCount) return;
+        int length = lengths[frame];
+        junk = !ring.copyFrame(sequences[frame], frameBuffer);
+        missing[frame] = junk;
+        // Pad byte after odd sized frames
+        if (!junk && (length & 1) == 1) frameBuffer[length] = 0;
+        chunkHeader.clear();
+        fourCC(chunkHeader, junk ? "JUNK" : "00dc").putInt(length);
+        chunkHeader.flip();
+        dataPosition = 0;
+        dataLength = padded(length);
+    }
+
+    // Frames that went missing are dropped from the index and the space is handed to a JUNK chunk
+    private ByteBuffer buildIndex() {
+        ByteBuffer b = ByteBuffer.allocate(8 + 16 * frameCount).order(ByteOrder.LITTLE_ENDIAN);
+        int present = 0;
+        for (int i = 0; i < frameCount; i++) {
+            if (!missing[i]) present++;
+        }
+        fourCC(b, "idx1").putInt(16 * present);
+        int offset = 4;
+        for (int i = 0; i < frameCount; i++) {
+            if (!missing[i]) {
+                fourCC(b, "00dc");
+                b.putInt(AVIIF_KEYFRAME);
+                b.putInt(offset);
+                b.putInt(lengths[i]);
+            }
+            offset += 8 + padded(lengths[i]);
+        }
+        if (present < frameCount) {
+            fourCC(b, "JUNK").putInt(16 * (frameCount - present) - 8);
+        }
+        b.position(b.capacity());
+        b.flip();
+        return b;
+    }
+
+    private static int drain(ByteBuffer source, byte[] b, int off, int len) {
+        int n = Math.min(len, source.remaining());
+        source.get(b, off, n);
+        return n;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.remotecamera.Recording;
+
+/*
+ * Keeps the most recent encoded frames in one preallocated byte array.
+ * Frames are copied in back to back and the oldest ones are evicted when the byte budget or
+ * the slot count runs out, so recording allocates nothing per frame. Frames are addressed by
+ * sequence number; a reader that falls behind simply finds its frame gone.
+ */
+public class FrameRingBuffer {
+
+    private final byte[] data;
+    private final int maxFrames;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final long[] timestamps;
+
+    // Slot the next frame goes into, the oldest frame sits count slots behind it
+    private int head = 0;
+    private int count = 0;
+    private int writePosition = 0;
+    private long nextSequence = 1;
+    private long evictedFrames = 0;
+
+    public FrameRingBuffer(int capacityBytes, int maxFrames) {
+        if (capacityBytes <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacityBytes);
+        if (maxFrames <= 0) throw new IllegalArgumentException("Frame slots must be positive: " + maxFrames);
+        this.data = new byte[capacityBytes];
+        this.maxFrames = maxFrames;
+        this.offsets = new int[maxFrames];
+        this.lengths = new int[maxFrames];
+        this.timestamps = new long[maxFrames];
+    }
+
+    // Returns false when the frame is larger than the whole buffer
+    public synchronized boolean add(byte[] frame, long timestampMillis) {
+        int length = frame.length;
+        if (length > data.length) return false;
+
+        if (count == maxFrames) evictOldest();
+        if (writePosition + length > data.length) {
+            // Frames past the write position are the oldest ones, the unused tail is skipped
+            while (count > 0 && offsets[oldestSlot()] >= writePosition) evictOldest();
+            writePosition = 0;
+        }
+        while (count > 0 && offsets[oldestSlot()] >= writePosition && offsets[oldestSlot()] < writePosition + length) {
+            evictOldest();
+        }
+
+        System.arraycopy(frame, 0, data, writePosition, length);
+        offsets[head] = writePosition;
+        lengths[head] = length;
+        timestamps[head] = timestampMillis;
+        writePosition += length;
+        head = (head + 1) % maxFrames;
+        count++;
+        nextSequence++;
+        return true;
+    }
+
+    private int oldestSlot() {
+        return (head - count + maxFrames) % maxFrames;
+    }
+
+    private void evictOldest() {
+        count--;
+        evictedFrames++;
+    }
+
+    private int slotOf(long sequence) {
+        long oldest = nextSequence - count;
+        if (sequence < oldest || sequence >= nextSequence) return -1;
+        return (int) ((head - (nextSequence - sequence) + maxFrames) % maxFrames);
+    }
+
+    /*
+     * Fills the arrays with every retained frame captured at or after fromMillis, oldest first.
+     * The arrays must hold getMaxFrames() entries. Returns the number of frames found.
+     */
+    public synchronized int collect(long fromMillis, long[] sequences, int[] frameLengths, long[] frameTimestamps) {
+        int found = 0;
+        long sequence = nextSequence - count;
+        for (int i = 0; i < count; i++, sequence++) {
+            int slot = (oldestSlot() + i) % maxFrames;
+            if (timestamps[slot] < fromMillis) continue;
+            sequences[found] = sequence;
+            frameLengths[found] = lengths[slot];
+            frameTimestamps[found] = timestamps[slot];
+            found++;
+        }
+        return found;
+    }
+
+    // Copies a frame into dest, false when it has been evicted in the meantime
+    public synchronized boolean copyFrame(long sequence, byte[] dest) {
+        int slot = slotOf(sequence);
+        if (slot < 0) return false;
+        System.arraycopy(data, offsets[slot], dest, 0, lengths[slot]);
+        return true;
+    }
+
+    public int getCapacityBytes() {
+        return data.length;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    public synchronized int getFrameCount() {
+        return count;
+    }
+
+    public synchronized long getEvictedFrames() {
+        return evictedFrames;
+    }
+
+    // Milliseconds between the oldest and newest retained frame
+    public synchronized long getRetainedMillis() {
+        if (count == 0) return 0;
+        return timestamps[(head - 1 + maxFrames) % maxFrames] - timestamps[oldestSlot()];
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.remotecamera.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Read side of a segment's frame index: fixed 16 byte entries of capture time (ms) and byte
+ * offset of the frame's part in the segment file, in capture order. The file is memory-mapped
+ * so seeking is a binary search over the mapping without reading the index into the heap.
+ */
+public class SegmentIndex {
+
+    public static final int ENTRY_SIZE = 16;
+
+    private final ByteBuffer entries;
+    private final int count;
+
+    private SegmentIndex(ByteBuffer entries) {
+        this.entries = entries;
+        this.count = entries.capacity() / ENTRY_SIZE;
+    }
+
+    // Maps the entries written so far, a segment still being recorded can be opened again later
+    public static SegmentIndex open(File indexFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size() / ENTRY_SIZE * ENTRY_SIZE;
+            if (size == 0) return new SegmentIndex(ByteBuffer.allocate(0));
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new SegmentIndex(mapped);
+        }
+    }
+
+    public static void putEntry(ByteBuffer out, long timestampMillis, long offset) {
+        out.putLong(timestampMillis).putLong(offset);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTimestamp(int entry) {
+        return entries.getLong(entry * ENTRY_SIZE);
+    }
+
+    public long getOffset(int entry) {
+        return entries.getLong(entry * ENTRY_SIZE + 8);
+    }
+
+    // First entry captured at or after timestampMillis, getCount() when there is none
+    public int search(long timestampMillis) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestampMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.remotecamera.Recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/*
+ * Continuous recording of the JPEG feed into rolling segment files.
+ * A segment is a plain multipart/x-mixed-replace body, so it can be served as an MJPEG stream
+ * as is, next to a SegmentIndex file with one entry per frame. Frames are queued by the caller
+ * and written in batches with gathering writes on a dedicated I/O thread; when the disk stalls
+ * the bounded queue fills and further frames are dropped instead of blocking the camera.
+ * Old segments are deleted once the total size or age limit is exceeded.
+ */
+public class SegmentRecorder {
+
+    public static final String SEGMENT_EXTENSION = ".mjpeg";
+    public static final String INDEX_EXTENSION = ".idx";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-\\d{13}");
+    private static final byte[] PART_END = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int QUEUE_FRAMES = 30;
+    private static final int MAX_BATCH = 16;
+    private static final long POLL_MS = 500;
+
+    private final File directory;
+    private final long segmentMillis;
+    private final long segmentMaxBytes;
+    private final long maxTotalBytes;
+    private final long maxAgeMillis;
+    private final BlockingQueue<QueuedFrame> queue = new ArrayBlockingQueue<>(QUEUE_FRAMES);
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private volatile long droppedFrames = 0;
+    private volatile long writtenFrames = 0;
+    private volatile String lastError = null;
+
+    // Only touched by the writer thread
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private long segmentStartMillis;
+    private long segmentBytes;
+    private volatile String currentSegment;
+
+    private static final class QueuedFrame {
+        private final byte[] data;
+        private final long timestampMillis;
+
+        private QueuedFrame(byte[] data, long timestampMillis) {
+            this.data = data;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+
+    public SegmentRecorder(File directory, long segmentMillis, long segmentMaxBytes, long maxTotalBytes, long maxAgeMillis)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create recording directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentMillis = segmentMillis;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.writerThread = new Thread(this::writeLoop, "Segment-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Never blocks, the frame is dropped when the writer is behind
+    public boolean offer(byte[] jpeg, long timestampMillis) {
+        if (!running) return false;
+        if (queue.offer(new QueuedFrame(jpeg, timestampMillis))) return true;
+        droppedFrames++;
+        return false;
+    }
+
+    private void writeLoop() {
+        List<QueuedFrame> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedFrame first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                lastError = e.getMessage();
+                // Start over with a fresh segment on the next batch
+                closeSegment();
+            } finally {
+                batch.clear();
+            }
+        }
+        closeSegment();
+    }
+
+    private void writeBatch(List<QueuedFrame> batch) throws IOException {
+        int start = 0;
+        while (start < batch.size()) {
+            QueuedFrame first = batch.get(start);
+            if (segmentChannel == null || first.timestampMillis - segmentStartMillis >= segmentMillis
+                    || segmentBytes >= segmentMaxBytes) {
+                rollSegment(first.timestampMillis);
+            }
+            // Frames up to the next roll point go out in one gathering write
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end).timestampMillis - segmentStartMillis < segmentMillis) end++;
+
+            ByteBuffer[] buffers = new ByteBuffer[(end - start) * 3];
+            ByteBuffer index = ByteBuffer.allocate((end - start) * SegmentIndex.ENTRY_SIZE);
+            long offset = segmentBytes;
+            for (int i = start; i < end; i++) {
+                QueuedFrame frame = batch.get(i);
+                byte[] header = partHeader(frame);
+                SegmentIndex.putEntry(index, frame.timestampMillis, offset);
+                int b = (i - start) * 3;
+                buffers[b] = ByteBuffer.wrap(header);
+                buffers[b + 1] = ByteBuffer.wrap(frame.data);
+                buffers[b + 2] = ByteBuffer.wrap(PART_END);
+                offset += header.length + frame.data.length + PART_END.length;
+            }
+            writeFully(segmentChannel, buffers);
+            index.flip();
+            writeFully(indexChannel, new ByteBuffer[]{index});
+            segmentBytes = offset;
+            writtenFrames += end - start;
+            start = end;
+        }
+    }
+
+    private static byte[] partHeader(QueuedFrame frame) {
+        return ("--frame\r\nContent-Type: image/jpeg\r\nContent-Length: " + frame.data.length
+                + "\r\nX-Timestamp: " + frame.timestampMillis + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private void rollSegment(long timestampMillis) throws IOException {
+        closeSegment();
+        String name = String.format(Locale.ROOT, "segment-%013d", timestampMillis);
+        segmentChannel = new RandomAccessFile(new File(directory, name + SEGMENT_EXTENSION), "rw").getChannel();
+        indexChannel = new RandomAccessFile(new File(directory, name + INDEX_EXTENSION), "rw").getChannel();
+        segmentChannel.truncate(0);
+        indexChannel.truncate(0);
+        segmentStartMillis = timestampMillis;
+        segmentBytes = 0;
+        currentSegment = name;
+        enforceRetention(timestampMillis);
+    }
+
+    private void closeSegment() {
+        if (segmentChannel == null) return;
+        try {
+            segmentChannel.force(false);
+            indexChannel.force(false);
+        } catch (IOException e) {
+            lastError = e.getMessage();
+        }
+        closeQuietly(segmentChannel);
+        closeQuietly(indexChannel);
+        segmentChannel = null;
+        indexChannel = null;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Deletes the oldest finished segments while over the size budget or past the age limit
+    private void enforceRetention(long nowMillis) {
+        String[] names = listSegmentNames();
+        long total = 0;
+        for (String name : names) {
+            total += new File(directory, name + SEGMENT_EXTENSION).length() + new File(directory, name + INDEX_EXTENSION).length();
+        }
+        for (String name : names) {
+            if (name.equals(currentSegment)) break;
+            boolean expired = nowMillis - startOf(name) > maxAgeMillis;
+            if (total <= maxTotalBytes && !expired) break;
+            File segment = new File(directory, name + SEGMENT_EXTENSION);
+            File index = new File(directory, name + INDEX_EXTENSION);
+            total -= segment.length() + index.length();
+            if (!segment.delete() || !index.delete()) lastError = "Failed to delete " + name;
+        }
+    }
+
+    // Segment names sort by start time
+    public String[] listSegmentNames() {
+        String[] files = directory.list();
+        if (files == null) return new String[0];
+        List<String> names = new ArrayList<>();
+        for (String file : files) {
+            if (!file.endsWith(SEGMENT_EXTENSION)) continue;
+            String name = file.substring(0, file.length() - SEGMENT_EXTENSION.length());
+            if (isSegmentName(name)) names.add(name);
+        }
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public static boolean isSegmentName(String name) {
+        return SEGMENT_NAME.matcher(name).matches();
+    }
+
+    public static long startOf(String name) {
+        return Long.parseLong(name.substring("segment-".length()));
+    }
+
+    // Null for anything that is not an existing segment, so request paths cannot escape the directory
+    public File getSegmentFile(String name) {
+        if (!isSegmentName(name)) return null;
+        File file = new File(directory, name + SEGMENT_EXTENSION);
+        return file.isFile() ? file : null;
+    }
+
+    public File getIndexFile(String name) {
+        if (!isSegmentName(name)) return null;
+        File file = new File(directory, name + INDEX_EXTENSION);
+        return file.isFile() ? file : null;
+    }
+
+    public String getCurrentSegment() {
+        return currentSegment;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getWrittenFrames() {
+        return writtenFrames;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    // Counters and one entry per segment for /recordings; a segment without its index is left out
+    public String toJson() {
+        StringBuilder body = new StringBuilder(1024);
+        String error = lastError;
+        body.append("{\"written\":").append(writtenFrames)
+                .append(",\"dropped\":").append(droppedFrames)
+                .append(",\"error\":").append(error == null ? "null" : "\"" + error.replace("\"", "'") + "\"")
+                .append(",\"segments\":[");
+        boolean first = true;
+        for (String name : listSegmentNames()) {
+            File segment = getSegmentFile(name);
+            File indexFile = getIndexFile(name);
+            if (segment == null || indexFile == null) continue;
+            int frames = 0;
+            long end = startOf(name);
+            try {
+                SegmentIndex index = SegmentIndex.open(indexFile);
+                frames = index.getCount();
+                if (frames > 0) end = index.getTimestamp(frames - 1);
+            } catch (IOException e) {
+                // Listed without frames, the segment itself may still play
+            }
+            if (!first) body.append(',');
+            first = false;
+            body.append("{\"name\":\"").append(name)
+                    .append("\",\"start\":").append(startOf(name))
+                    .append(",\"end\":").append(end)
+                    .append(",\"frames\":").append(frames)
+                    .append(",\"bytes\":").append(segment.length())
+                    .append(",\"recording\":").append(name.equals(currentSegment))
+                    .append('}');
+        }
+        return body.append("]}").toString();
+    }
+
+    // Flushes what is queued and closes the current segment
+    public void stop() {
+        running = false;
+        try {
+            writerThread.join(2_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
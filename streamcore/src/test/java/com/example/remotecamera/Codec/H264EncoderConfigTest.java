@@ -0,0 +1,36 @@
+package com.example.remotecamera.Codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class H264EncoderConfigTest {
+
+    @Test
+    public void defaults() {
+        H264EncoderConfig config = H264EncoderConfig.defaults();
+        assertEquals(H264EncoderConfig.DEFAULT_BITRATE, config.getBitrate());
+        assertEquals(H264EncoderConfig.DEFAULT_FRAME_RATE, config.getFrameRate());
+        assertEquals(H264EncoderConfig.DEFAULT_GOP_SECONDS, config.getGopSeconds());
+    }
+
+    @Test
+    public void allowsAllKeyFrames() {
+        assertEquals(0, new H264EncoderConfig(500_000, 10, 0).getGopSeconds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroBitrate() {
+        new H264EncoderConfig(0, 30, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroFrameRate() {
+        new H264EncoderConfig(2_000_000, 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeGop() {
+        new H264EncoderConfig(2_000_000, 30, -1);
+    }
+}
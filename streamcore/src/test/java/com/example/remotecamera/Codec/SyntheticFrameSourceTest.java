@@ -0,0 +1,45 @@
+package com.example.remotecamera.Codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SyntheticFrameSourceTest {
+
+    @Test
+    public void framesAreNv21SizedAndMove() {
+        SyntheticFrameSource source = new SyntheticFrameSource(64, 48, 30);
+        byte[] first = source.nextFrame().clone();
+        byte[] second = source.nextFrame();
+        assertEquals(64 * 48 * 3 / 2, second.length);
+        assertFalse(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void presentationTimeFollowsFrameRate() {
+        SyntheticFrameSource source = new SyntheticFrameSource(64, 48, 25);
+        source.nextFrame();
+        assertEquals(0, source.getPresentationTimeUs());
+        source.nextFrame();
+        source.nextFrame();
+        assertEquals(80_000, source.getPresentationTimeUs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSize() {
+        new SyntheticFrameSource(63, 48, 30);
+    }
+
+    @Test
+    public void drivesEncoderConfigFrameRate() {
+        // One GOP worth of frames spans exactly gopSeconds of presentation time
+        H264EncoderConfig config = new H264EncoderConfig(1_000_000, 15, 2);
+        SyntheticFrameSource source = new SyntheticFrameSource(64, 48, config.getFrameRate());
+        for (int i = 0; i <= config.getFrameRate() * config.getGopSeconds(); i++) {
+            source.nextFrame();
+        }
+        assertEquals(config.getGopSeconds() * 1_000_000L, source.getPresentationTimeUs());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.remotecamera.HttpHandler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteRangeTest {
+
+    private static final long LENGTH = 1_000;
+
+    private static void assertRange(String header, long start, long end) {
+        ByteRange range = ByteRange.parse(header, LENGTH);
+        assertNotNull(header, range);
+        assertEquals(header, start, range.getStart());
+        assertEquals(header, end, range.getEnd());
+        assertEquals(header, end - start + 1, range.getLength());
+    }
+
+    @Test
+    public void closedRange() {
+        assertRange("bytes=0-99", 0, 99);
+        assertRange("bytes=500-500", 500, 500);
+        // A last position past the end is clipped to the entity
+        assertRange("bytes=900-5000", 900, 999);
+    }
+
+    @Test
+    public void openEndedRange() {
+        assertRange("bytes=200-", 200, 999);
+        assertRange("bytes=999-", 999, 999);
+    }
+
+    @Test
+    public void suffixRange() {
+        assertRange("bytes=-100", 900, 999);
+        // A suffix longer than the entity selects all of it
+        assertRange("bytes=-5000", 0, 999);
+    }
+
+    @Test
+    public void multiRangeFallsBackToTheFirstRange() {
+        assertRange("bytes=10-19, 50-59", 10, 19);
+        assertRange("bytes=-10,0-0", 990, 999);
+    }
+
+    @Test
+    public void malformedHeaderServesTheWholeEntity() {
+        assertNull(ByteRange.parse(null, LENGTH));
+        assertNull(ByteRange.parse("items=0-10", LENGTH));
+        assertNull(ByteRange.parse("bytes=abc", LENGTH));
+        assertNull(ByteRange.parse("bytes=-", LENGTH));
+        assertNull(ByteRange.parse("bytes=x-10", LENGTH));
+        // Inverted ranges are a syntax error, not an unsatisfiable range
+        assertNull(ByteRange.parse("bytes=50-10", LENGTH));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void startPastTheEndIsUnsatisfiable() {
+        ByteRange.parse("bytes=1000-", LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSuffixIsUnsatisfiable() {
+        ByteRange.parse("bytes=-0", LENGTH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anyRangeOfAnEmptyEntityIsUnsatisfiable() {
+        ByteRange.parse("bytes=-10", 0);
+    }
+
+    @Test
+    public void contentRange() {
+        assertEquals("bytes 900-999/1000", ByteRange.parse("bytes=-100", LENGTH).toContentRange(LENGTH));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.remotecamera.HttpHandler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+
+    private ServerSocket server;
+    private ConnectionPool pool;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        pool = new ConnectionPool(1, 1, 5);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        pool.shutdown();
+        for (Socket socket : sockets) socket.close();
+        server.close();
+    }
+
+    // Connects a client and hands the accepted side to the pool, returns the client side
+    private Socket connect(Runnable handler) throws IOException {
+        Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+        client.setSoTimeout(5000);
+        sockets.add(client);
+        Socket accepted = server.accept();
+        sockets.add(accepted);
+        pool.execute(handler, accepted);
+        return client;
+    }
+
+    private Runnable blocking() {
+        return () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    @Test
+    public void connectionBeyondPoolAndQueueGets503() throws Exception {
+        connect(blocking());
+        connect(blocking());
+        assertEquals(1, pool.getQueuedCount());
+        assertTrue(pool.isSaturated());
+
+        Socket rejected = connect(blocking());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(rejected.getInputStream(), StandardCharsets.US_ASCII));
+        assertEquals("HTTP/1.1 503 Service Unavailable", reader.readLine());
+        List<String> headers = new ArrayList<>();
+        for (String line; !(line = reader.readLine()).isEmpty(); ) headers.add(line);
+        assertTrue(headers.contains("Retry-After: 5"));
+        assertTrue(headers.contains("Connection: close"));
+        assertTrue(headers.contains("Content-Length: 0"));
+        // The server closed its side after the response
+        assertNull(reader.readLine());
+        assertEquals(1, pool.getRejectedCount());
+    }
+
+    @Test
+    public void acceptedConnectionIsLeftToTheHandler() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        Socket client = connect(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getRejectedCount());
+        // Nothing was written to the client
+        client.setSoTimeout(200);
+        try {
+            int read = client.getInputStream().read();
+            fail("Unexpected byte " + read);
+        } catch (SocketTimeoutException expected) {
+            // Still open and silent
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.remotecamera.HttpHandler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileRangeStreamTest {
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[100_000];
+        new Random(3).nextBytes(content);
+        file = File.createTempFile("segment", ".mjpeg");
+        Files.write(file.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static byte[] readAll(InputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        for (int n; (n = in.read(buffer)) != -1; ) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private byte[] serve(String header, int bufferSize) throws IOException {
+        ByteRange range = ByteRange.parse(header, file.length());
+        try (FileRangeStream in = new FileRangeStream(file, range.getStart(), range.getLength())) {
+            assertEquals(range.getLength(), in.available());
+            return readAll(in, bufferSize);
+        }
+    }
+
+    @Test
+    public void streamsExactlyTheRequestedBytes() throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(content, 1_000, 2_000), serve("bytes=1000-1999", 4_096));
+        assertArrayEquals(Arrays.copyOfRange(content, 99_000, 100_000), serve("bytes=-1000", 4_096));
+        assertArrayEquals(Arrays.copyOfRange(content, 50_000, 100_000), serve("bytes=50000-", 4_096));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), serve("bytes=10-19,30-39", 4_096));
+    }
+
+    @Test
+    public void smallReadBuffersSeeTheSameBytes() throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(content, 12_345, 67_890), serve("bytes=12345-67889", 7));
+    }
+
+    @Test
+    public void singleByteReads() throws IOException {
+        try (FileRangeStream in = new FileRangeStream(file, 5, 3)) {
+            assertEquals(content[5] & 0xFF, in.read());
+            assertEquals(content[6] & 0xFF, in.read());
+            assertEquals(content[7] & 0xFF, in.read());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void skipStopsAtTheEndOfTheRange() throws IOException {
+        try (FileRangeStream in = new FileRangeStream(file, 100, 50)) {
+            assertEquals(20, in.skip(20));
+            assertEquals(content[120] & 0xFF, in.read());
+            assertEquals(29, in.skip(1_000));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void truncatedFileEndsTheBody() throws IOException {
+        try (FileRangeStream in = new FileRangeStream(file, 0, content.length)) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(10_000);
+            }
+            assertArrayEquals(Arrays.copyOf(content, 10_000), readAll(in, 4_096));
+        }
+    }
+}
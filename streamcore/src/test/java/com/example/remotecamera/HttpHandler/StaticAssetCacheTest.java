@@ -0,0 +1,58 @@
+package com.example.remotecamera.HttpHandler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class StaticAssetCacheTest {
+
+    private static byte[] text(int repeats) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < repeats; i++) text.append("body { color: var(--text-color); }\n");
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void gzipVariantHasItsOwnETag() throws IOException {
+        StaticAssetCache.Asset asset = new StaticAssetCache().put("style", "text/css", text(50), true);
+        assertNotNull(asset.getGzipData());
+        String etag = asset.getETag();
+        assertEquals(etag.substring(0, etag.length() - 1) + "-gz\"", asset.getGzipETag());
+    }
+
+    @Test
+    public void gzipDataInflatesToTheOriginal() throws IOException {
+        byte[] data = text(50);
+        StaticAssetCache.Asset asset = new StaticAssetCache().put("style", "text/css", data, true);
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(asset.getGzipData()))) {
+            byte[] buffer = new byte[256];
+            for (int n; (n = in.read(buffer)) != -1; ) inflated.write(buffer, 0, n);
+        }
+        assertArrayEquals(data, inflated.toByteArray());
+    }
+
+    @Test
+    public void noGzipVariantWhenItWouldNotShrink() throws IOException {
+        StaticAssetCache.Asset asset = new StaticAssetCache().put("tiny", "text/plain", new byte[]{1, 2, 3}, true);
+        assertNull(asset.getGzipData());
+        assertNull(asset.getGzipETag());
+    }
+
+    @Test
+    public void eTagFollowsContent() throws IOException {
+        StaticAssetCache cache = new StaticAssetCache();
+        String first = cache.put("page", "text/html", text(3), false).getETag();
+        String same = cache.put("page", "text/html", text(3), false).getETag();
+        String changed = cache.put("page", "text/html", text(4), false).getETag();
+        assertEquals(first, same);
+        assertNotEquals(first, changed);
+        assertSame(cache.get("page").getETag(), changed);
+    }
+}
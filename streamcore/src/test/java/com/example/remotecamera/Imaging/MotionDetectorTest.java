@@ -0,0 +1,149 @@
+package com.example.remotecamera.Imaging;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class MotionDetectorTest {
+
+    // Ten by ten pixels per grid cell
+    private static final int WIDTH = MotionDetector.GRID_COLUMNS * 10;
+    private static final int HEIGHT = MotionDetector.GRID_ROWS * 10;
+    private static final long FRAME_MS = 100;
+
+    // Luma plane of the given background with the first cells (row by row) set to value
+    private static ByteBuffer frame(int rowStride, int background, int cells, int value) {
+        ByteBuffer plane = ByteBuffer.allocate(rowStride * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int cell = (row / 10) * MotionDetector.GRID_COLUMNS + col / 10;
+                plane.put(row * rowStride + col, (byte) (cell < cells ? value : background));
+            }
+        }
+        return plane;
+    }
+
+    private static List<Long> eventIds(MotionDetector detector, long afterId) {
+        StringBuilder json = new StringBuilder();
+        detector.appendEventsJson(json, afterId);
+        List<Long> ids = new ArrayList<>();
+        Matcher matcher = Pattern.compile("\"id\":(\\d+)").matcher(json);
+        while (matcher.find()) ids.add(Long.parseLong(matcher.group(1)));
+        return ids;
+    }
+
+    @Test
+    public void staticFramesNeverReportMotion() {
+        MotionDetector detector = new MotionDetector();
+        ByteBuffer plane = frame(WIDTH, 90, 0, 0);
+        for (int i = 0; i < 50; i++) {
+            assertFalse(detector.update(plane, WIDTH, WIDTH, HEIGHT, i * FRAME_MS));
+            assertEquals(0, detector.getChangedCells());
+        }
+        assertEquals(0, eventIds(detector, 0).size());
+    }
+
+    @Test
+    public void changedBlockAboveThresholdIsMotion() {
+        MotionDetector detector = new MotionDetector(12, 6, 1_000);
+        detector.update(frame(WIDTH, 90, 0, 0), WIDTH, WIDTH, HEIGHT, 0);
+        assertTrue(detector.update(frame(WIDTH, 90, 8, 200), WIDTH, WIDTH, HEIGHT, FRAME_MS));
+        assertEquals(8, detector.getChangedCells());
+        assertTrue(detector.isMotion());
+
+        StringBuilder json = new StringBuilder();
+        detector.appendEventsJson(json, 0);
+        assertEquals("[{\"id\":1,\"start\":" + FRAME_MS + ",\"end\":null,\"peakCells\":8}]", json.toString());
+    }
+
+    @Test
+    public void tooFewChangedCellsIsNotMotion() {
+        MotionDetector detector = new MotionDetector(12, 6, 1_000);
+        detector.update(frame(WIDTH, 90, 0, 0), WIDTH, WIDTH, HEIGHT, 0);
+        assertFalse(detector.update(frame(WIDTH, 90, 5, 200), WIDTH, WIDTH, HEIGHT, FRAME_MS));
+        assertEquals(5, detector.getChangedCells());
+    }
+
+    @Test
+    public void smallLumaChangeIsBelowCellThreshold() {
+        MotionDetector detector = new MotionDetector(12, 6, 1_000);
+        detector.update(frame(WIDTH, 90, 0, 0), WIDTH, WIDTH, HEIGHT, 0);
+        // Every cell changes, but by less than the threshold
+        assertFalse(detector.update(frame(WIDTH, 100, 0, 0), WIDTH, WIDTH, HEIGHT, FRAME_MS));
+        assertEquals(0, detector.getChangedCells());
+    }
+
+    @Test
+    public void honoursRowStrideAndLeavesPositionAlone() {
+        int rowStride = WIDTH + 64;
+        MotionDetector detector = new MotionDetector(12, 6, 1_000);
+        ByteBuffer still = frame(rowStride, 90, 0, 0);
+        detector.update(still, rowStride, WIDTH, HEIGHT, 0);
+        ByteBuffer moved = frame(rowStride, 90, 10, 200);
+        assertTrue(detector.update(moved, rowStride, WIDTH, HEIGHT, FRAME_MS));
+        assertEquals(10, detector.getChangedCells());
+        assertEquals(0, moved.position());
+    }
+
+    @Test
+    public void motionIsHeldThenClosed() {
+        MotionDetector detector = new MotionDetector(12, 6, 1_000);
+        ByteBuffer still = frame(WIDTH, 90, 0, 0);
+        ByteBuffer moved = frame(WIDTH, 90, 8, 200);
+        long now = 0;
+        detector.update(still, WIDTH, WIDTH, HEIGHT, now);
+        detector.update(moved, WIDTH, WIDTH, HEIGHT, now += FRAME_MS);
+        // The background catches up with the new scene, after which nothing changes any more
+        long lastMotion = now;
+        while (detector.getChangedCells() >= 6) {
+            lastMotion = now;
+            assertTrue(detector.update(moved, WIDTH, WIDTH, HEIGHT, now += FRAME_MS));
+        }
+        assertTrue(detector.update(moved, WIDTH, WIDTH, HEIGHT, lastMotion + 1_000));
+        assertFalse(detector.update(moved, WIDTH, WIDTH, HEIGHT, lastMotion + 1_000 + FRAME_MS));
+
+        StringBuilder json = new StringBuilder();
+        detector.appendEventsJson(json, 0);
+        assertEquals("[{\"id\":1,\"start\":" + FRAME_MS + ",\"end\":" + lastMotion + ",\"peakCells\":8}]", json.toString());
+    }
+
+    @Test
+    public void eventRingKeepsTheNewestEvents() {
+        MotionDetector detector = new MotionDetector(12, 6, 0);
+        ByteBuffer[] scenes = {frame(WIDTH, 90, 0, 0), frame(WIDTH, 90, 8, 200)};
+        long now = 0;
+        detector.update(scenes[0], WIDTH, WIDTH, HEIGHT, now);
+        int events = 40;
+        for (int event = 1; event <= events; event++) {
+            ByteBuffer scene = scenes[event % 2];
+            assertTrue(detector.update(scene, WIDTH, WIDTH, HEIGHT, now += FRAME_MS));
+            // Without a hold time the event ends on the first frame without changes
+            while (detector.update(scene, WIDTH, WIDTH, HEIGHT, now += FRAME_MS)) {
+                assertTrue(now < event * 100_000L);
+            }
+        }
+
+        List<Long> ids = eventIds(detector, 0);
+        assertEquals(32, ids.size());
+        assertEquals(Long.valueOf(events - 31), ids.get(0));
+        assertEquals(Long.valueOf(events), ids.get(ids.size() - 1));
+        for (int i = 1; i < ids.size(); i++) {
+            assertEquals(ids.get(i - 1) + 1, (long) ids.get(i));
+        }
+
+        List<Long> newer = eventIds(detector, events - 2);
+        assertEquals(2, newer.size());
+        assertEquals(Long.valueOf(events - 1), newer.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreChangedCellsThanTheGridHas() {
+        new MotionDetector(12, MotionDetector.getCellCount() + 1, 1_000);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.remotecamera.Imaging;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class NV21ConverterTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    private static byte luma(int row, int col, int seed) {
+        return (byte) (row * 31 + col * 7 + seed);
+    }
+
+    private static byte u(int row, int col, int seed) {
+        return (byte) (60 + row * 11 + col * 3 + seed);
+    }
+
+    private static byte v(int row, int col, int seed) {
+        return (byte) (200 - row * 5 - col * 13 + seed);
+    }
+
+    private static byte[] expectedNv21(int seed) {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                nv21[row * WIDTH + col] = luma(row, col, seed);
+            }
+        }
+        int position = WIDTH * HEIGHT;
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                nv21[position++] = v(row, col, seed);
+                nv21[position++] = u(row, col, seed);
+            }
+        }
+        return nv21;
+    }
+
+    private static ByteBuffer lumaPlane(int rowStride, int seed) {
+        ByteBuffer plane = ByteBuffer.allocate(rowStride * (HEIGHT - 1) + WIDTH);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                plane.put(row * rowStride + col, luma(row, col, seed));
+            }
+        }
+        return plane;
+    }
+
+    // One VU allocation as most devices deliver it: V starts at 0, U one byte later, V ends one byte early
+    private static ByteBuffer[] interleavedChroma(int rowStride, int seed) {
+        ByteBuffer chroma = ByteBuffer.allocate(rowStride * (HEIGHT / 2 - 1) + WIDTH);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                chroma.put(row * rowStride + 2 * col, v(row, col, seed));
+                chroma.put(row * rowStride + 2 * col + 1, u(row, col, seed));
+            }
+        }
+        chroma.limit(chroma.capacity() - 1);
+        ByteBuffer vPlane = chroma.slice();
+        chroma.limit(chroma.capacity()).position(1);
+        ByteBuffer uPlane = chroma.slice();
+        return new ByteBuffer[]{uPlane, vPlane};
+    }
+
+    private static ByteBuffer[] planarChroma(int seed) {
+        ByteBuffer uPlane = ByteBuffer.allocate(WIDTH / 2 * HEIGHT / 2);
+        ByteBuffer vPlane = ByteBuffer.allocate(WIDTH / 2 * HEIGHT / 2);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                uPlane.put(row * WIDTH / 2 + col, u(row, col, seed));
+                vPlane.put(row * WIDTH / 2 + col, v(row, col, seed));
+            }
+        }
+        return new ByteBuffer[]{uPlane, vPlane};
+    }
+
+    @Test
+    public void interleavedTightPlanes() {
+        ByteBuffer[] chroma = interleavedChroma(WIDTH, 0);
+        byte[] nv21 = new NV21Converter().convert(lumaPlane(WIDTH, 0), WIDTH, chroma[0], chroma[1], WIDTH, 2, WIDTH, HEIGHT);
+        // Includes the final U sample, which lies beyond the end of the V plane
+        assertArrayEquals(expectedNv21(0), nv21);
+    }
+
+    @Test
+    public void interleavedPaddedRows() {
+        int stride = WIDTH + 8;
+        ByteBuffer[] chroma = interleavedChroma(stride, 0);
+        byte[] nv21 = new NV21Converter().convert(lumaPlane(stride, 0), stride, chroma[0], chroma[1], stride, 2, WIDTH, HEIGHT);
+        assertArrayEquals(expectedNv21(0), nv21);
+    }
+
+    @Test
+    public void planarChromaPlanes() {
+        ByteBuffer[] chroma = planarChroma(0);
+        byte[] nv21 = new NV21Converter().convert(lumaPlane(WIDTH, 0), WIDTH, chroma[0], chroma[1], WIDTH / 2, 1, WIDTH, HEIGHT);
+        assertArrayEquals(expectedNv21(0), nv21);
+    }
+
+    @Test
+    public void separatePlanesWithPixelStrideTwoAreNotTreatedAsInterleaved() {
+        // Same pixel stride as interleaved data, but U and V live in unrelated buffers
+        ByteBuffer uPlane = ByteBuffer.allocate(WIDTH * (HEIGHT / 2 - 1) + WIDTH - 1);
+        ByteBuffer vPlane = ByteBuffer.allocate(uPlane.capacity());
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                uPlane.put(row * WIDTH + 2 * col, u(row, col, 0));
+                vPlane.put(row * WIDTH + 2 * col, v(row, col, 0));
+            }
+        }
+        byte[] nv21 = new NV21Converter().convert(lumaPlane(WIDTH, 0), WIDTH, uPlane, vPlane, WIDTH, 2, WIDTH, HEIGHT);
+        assertArrayEquals(expectedNv21(0), nv21);
+    }
+
+    @Test
+    public void flatChromaDefersLayoutDetection() {
+        NV21Converter converter = new NV21Converter();
+        ByteBuffer chroma = ByteBuffer.allocate(WIDTH * HEIGHT / 2);
+        for (int i = 0; i < chroma.capacity(); i++) chroma.put(i, (byte) 128);
+        chroma.limit(chroma.capacity() - 1);
+        ByteBuffer vPlane = chroma.slice();
+        chroma.limit(chroma.capacity()).position(1);
+        ByteBuffer uPlane = chroma.slice();
+
+        byte[] grey = converter.convert(lumaPlane(WIDTH, 0), WIDTH, uPlane, vPlane, WIDTH, 2, WIDTH, HEIGHT);
+        for (int i = WIDTH * HEIGHT; i < grey.length; i++) {
+            assertEquals(128, grey[i] & 0xFF);
+        }
+
+        // A later frame with colour still converts correctly once the layout is decided
+        ByteBuffer[] colour = interleavedChroma(WIDTH, 3);
+        byte[] nv21 = converter.convert(lumaPlane(WIDTH, 3), WIDTH, colour[0], colour[1], WIDTH, 2, WIDTH, HEIGHT);
+        assertArrayEquals(expectedNv21(3), nv21);
+    }
+
+    @Test
+    public void reusesItsBufferAndKeepsPlanePositions() {
+        NV21Converter converter = new NV21Converter();
+        ByteBuffer yPlane = lumaPlane(WIDTH, 0);
+        ByteBuffer[] chroma = interleavedChroma(WIDTH, 0);
+        byte[] first = converter.convert(yPlane, WIDTH, chroma[0], chroma[1], WIDTH, 2, WIDTH, HEIGHT);
+        byte[] second = converter.convert(yPlane, WIDTH, chroma[0], chroma[1], WIDTH, 2, WIDTH, HEIGHT);
+        assertSame(first, second);
+        assertEquals(0, yPlane.position());
+        assertEquals(0, chroma[0].position());
+        assertEquals(0, chroma[1].position());
+    }
+
+    @Test
+    public void writesIntoCallerBuffer() {
+        ByteBuffer[] chroma = interleavedChroma(WIDTH, 0);
+        byte[] output = new byte[WIDTH * HEIGHT * 3 / 2];
+        byte[] nv21 = new NV21Converter().convert(lumaPlane(WIDTH, 0), WIDTH, chroma[0], chroma[1], WIDTH, 2, WIDTH, HEIGHT, output);
+        assertSame(output, nv21);
+        assertArrayEquals(expectedNv21(0), output);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSmallCallerBuffer() {
+        ByteBuffer[] chroma = interleavedChroma(WIDTH, 0);
+        new NV21Converter().convert(lumaPlane(WIDTH, 0), WIDTH, chroma[0], chroma[1], WIDTH, 2, WIDTH, HEIGHT,
+                new byte[WIDTH * HEIGHT]);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.remotecamera.Imaging;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class NV21ScalerTest {
+
+    // Every luma and chroma byte differs from its neighbours, so a wrong pick shows up
+    private static byte[] frame(int width, int height) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                nv21[row * width + col] = (byte) (row * 16 + col);
+            }
+        }
+        int position = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                nv21[position++] = (byte) (100 + row * 8 + col);  // V
+                nv21[position++] = (byte) (200 + row * 8 + col);  // U
+            }
+        }
+        return nv21;
+    }
+
+    private static byte lumaAt(byte[] nv21, int width, int row, int col) {
+        return nv21[row * width + col];
+    }
+
+    private static byte vAt(byte[] nv21, int width, int height, int row, int col) {
+        return nv21[width * height + row * width + col * 2];
+    }
+
+    private static byte uAt(byte[] nv21, int width, int height, int row, int col) {
+        return nv21[width * height + row * width + col * 2 + 1];
+    }
+
+    @Test
+    public void sameWidthCopiesTheFrame() {
+        byte[] source = frame(8, 6);
+        NV21Scaler scaler = new NV21Scaler();
+        byte[] scaled = scaler.scale(source, 8, 6, 8);
+        assertEquals(8, scaler.getTargetWidth());
+        assertEquals(6, scaler.getTargetHeight());
+        assertArrayEquals(source, scaled);
+    }
+
+    @Test
+    public void halfWidthTakesEveryOtherPixel() {
+        byte[] source = frame(8, 4);
+        NV21Scaler scaler = new NV21Scaler();
+        byte[] scaled = scaler.scale(source, 8, 4, 4);
+        assertEquals(4, scaler.getTargetWidth());
+        assertEquals(2, scaler.getTargetHeight());
+        assertEquals(4 * 2 * 3 / 2, scaled.length);
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(lumaAt(source, 8, row * 2, col * 2), lumaAt(scaled, 4, row, col));
+            }
+        }
+        for (int col = 0; col < 2; col++) {
+            assertEquals(vAt(source, 8, 4, 0, col * 2), vAt(scaled, 4, 2, 0, col));
+            assertEquals(uAt(source, 8, 4, 0, col * 2), uAt(scaled, 4, 2, 0, col));
+        }
+    }
+
+    @Test
+    public void oddTargetWidthIsRoundedDownToEven() {
+        byte[] source = frame(12, 8);
+        NV21Scaler scaler = new NV21Scaler();
+        byte[] scaled = scaler.scale(source, 12, 8, 9);
+        assertEquals(8, scaler.getTargetWidth());
+        // 8 * 8 / 12 = 5.33, rounded down to even
+        assertEquals(4, scaler.getTargetHeight());
+        assertEquals(8 * 4 * 3 / 2, scaled.length);
+        // Nearest neighbour on a 1.5:1 ratio picks columns 0, 1, 3, 4, 6, 7, 9, 10 and rows 0, 2, 4, 6
+        int[] columns = {0, 1, 3, 4, 6, 7, 9, 10};
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 8; col++) {
+                assertEquals(lumaAt(source, 12, row * 2, columns[col]), lumaAt(scaled, 8, row, col));
+            }
+        }
+        // Chroma pairs 0, 1, 3, 4 of chroma rows 0 and 2, V and U never swap
+        int[] pairs = {0, 1, 3, 4};
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(vAt(source, 12, 8, row * 2, pairs[col]), vAt(scaled, 8, 4, row, col));
+                assertEquals(uAt(source, 12, 8, row * 2, pairs[col]), uAt(scaled, 8, 4, row, col));
+            }
+        }
+    }
+
+    @Test
+    public void scaledHeightFollowsTheAspectRatio() {
+        assertEquals(360, NV21Scaler.scaledHeight(1280, 720, 640));
+        assertEquals(480, NV21Scaler.scaledHeight(640, 480, 640));
+        // 480 * 330 / 640 = 247.5
+        assertEquals(246, NV21Scaler.scaledHeight(640, 480, 330));
+        assertEquals(2, NV21Scaler.scaledHeight(640, 480, 2));
+    }
+
+    @Test
+    public void outputIsReusedUntilTheSizeChanges() {
+        NV21Scaler scaler = new NV21Scaler();
+        byte[] first = scaler.scale(frame(8, 4), 8, 4, 4);
+        byte[] copy = Arrays.copyOf(first, first.length);
+        byte[] second = scaler.scale(frame(8, 4), 8, 4, 4);
+        assertSame(first, second);
+        assertArrayEquals(copy, second);
+
+        byte[] resized = scaler.scale(frame(12, 8), 12, 8, 6);
+        assertNotSame(first, resized);
+        assertEquals(6, scaler.getTargetWidth());
+        assertEquals(4, scaler.getTargetHeight());
+    }
+}
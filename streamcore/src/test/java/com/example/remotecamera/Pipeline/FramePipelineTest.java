@@ -0,0 +1,139 @@
+package com.example.remotecamera.Pipeline;
+
+import com.example.remotecamera.Metrics.PipelineMetrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FramePipelineTest {
+
+    private static final int FRAME_SIZE = 64;
+
+    private FramePipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) pipeline.stop();
+    }
+
+    private static class RecordingStages implements FramePipeline.Stages {
+        final List<Long> published = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final CountDownLatch done;
+        final long lastSequence;
+
+        RecordingStages(long lastSequence) {
+            this.lastSequence = lastSequence;
+            this.done = new CountDownLatch(1);
+        }
+
+        @Override
+        public void overlay(FramePipeline.FrameJob job) {
+        }
+
+        @Override
+        public byte[] encode(FramePipeline.FrameJob job) {
+            return new byte[]{job.getData()[0]};
+        }
+
+        @Override
+        public void publish(FramePipeline.FrameJob job, byte[] jpeg) {
+            synchronized (published) {
+                published.add(job.getSequence());
+            }
+            if (job.getSequence() == lastSequence) done.countDown();
+        }
+
+        @Override
+        public synchronized void onError(String stage, Throwable error) {
+            errors.add(stage + ": " + error.getClass().getSimpleName());
+        }
+    }
+
+    // Retries until a buffer is free and the frame is accepted, failing if the pipeline stalls
+    private void submitAll(int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        for (int i = 0; i < frames; i++) {
+            while (true) {
+                assertTrue("Pipeline stalled at frame " + i, System.currentTimeMillis() < deadline);
+                byte[] buffer = pipeline.acquireBuffer(FRAME_SIZE);
+                if (buffer != null) {
+                    buffer[0] = (byte) i;
+                    if (pipeline.submit(buffer, 8, 8, i, i, true)) break;
+                }
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    public void publishesInSubmissionOrder() throws InterruptedException {
+        RecordingStages stages = new RecordingStages(199) {
+            @Override
+            public byte[] encode(FramePipeline.FrameJob job) {
+                // Uneven encode times let workers finish out of order
+                if (job.getSequence() % 3 == 0) Thread.yield();
+                return super.encode(job);
+            }
+        };
+        pipeline = new FramePipeline(stages, 3);
+        submitAll(200);
+        assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+        synchronized (stages.published) {
+            for (int i = 0; i < stages.published.size(); i++) {
+                assertEquals(i, (long) stages.published.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void errorInEncodeDoesNotStallLaterFrames() throws InterruptedException {
+        long errorsBefore = PipelineMetrics.PIPELINE_ERRORS.get();
+        RecordingStages stages = new RecordingStages(18) {
+            @Override
+            public byte[] encode(FramePipeline.FrameJob job) {
+                if (job.getSequence() % 2 == 1) throw new OutOfMemoryError("frame too large");
+                return super.encode(job);
+            }
+        };
+        pipeline = new FramePipeline(stages, 2);
+        submitAll(20);
+        assertTrue("Frames after a failed encode were never published", stages.done.await(10, TimeUnit.SECONDS));
+
+        synchronized (stages.published) {
+            assertEquals(10, stages.published.size());
+        }
+        assertEquals(10, PipelineMetrics.PIPELINE_ERRORS.get() - errorsBefore);
+        // The same failure over and over is reported once
+        synchronized (stages) {
+            assertEquals(1, stages.errors.size());
+            assertEquals("encode: OutOfMemoryError", stages.errors.get(0));
+        }
+        assertEquals("encode: java.lang.OutOfMemoryError: frame too large", pipeline.getLastError());
+    }
+
+    @Test
+    public void errorInPublishIsReported() throws InterruptedException {
+        RecordingStages stages = new RecordingStages(4) {
+            @Override
+            public void publish(FramePipeline.FrameJob job, byte[] jpeg) {
+                super.publish(job, jpeg);
+                if (job.getSequence() == 2) throw new IllegalStateException("socket closed");
+            }
+        };
+        pipeline = new FramePipeline(stages, 1);
+        submitAll(5);
+        assertTrue(stages.done.await(10, TimeUnit.SECONDS));
+        synchronized (stages) {
+            assertEquals(1, stages.errors.size());
+            assertEquals("publish: IllegalStateException", stages.errors.get(0));
+        }
+    }
+}
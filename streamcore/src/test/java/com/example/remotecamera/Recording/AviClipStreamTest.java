@@ -0,0 +1,152 @@
+package com.example.remotecamera.Recording;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AviClipStreamTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    // Size of RIFF header, hdrl list and movi list header
+    private static final int HEADER_SIZE = 224;
+
+    // Minimal JPEG: SOI, a baseline SOF0 segment with the frame size, filler and EOI
+    private static byte[] jpeg(int length, int fill) {
+        byte[] jpeg = new byte[length];
+        Arrays.fill(jpeg, (byte) fill);
+        byte[] head = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xC0, 0, 11, 8,
+                (byte) (HEIGHT >> 8), (byte) HEIGHT, (byte) (WIDTH >> 8), (byte) WIDTH, 1, 1, 0x11, 0};
+        System.arraycopy(head, 0, jpeg, 0, head.length);
+        jpeg[length - 2] = (byte) 0xFF;
+        jpeg[length - 1] = (byte) 0xD9;
+        return jpeg;
+    }
+
+    private static byte[] readAll(AviClipStream avi) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Odd read sizes so reads straddle every chunk boundary
+        byte[] buffer = new byte[37];
+        for (int n; (n = avi.read(buffer, 0, buffer.length)) != -1; ) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private static String fourCC(ByteBuffer b, int offset) {
+        byte[] code = new byte[4];
+        for (int i = 0; i < 4; i++) code[i] = b.get(offset + i);
+        return new String(code, StandardCharsets.US_ASCII);
+    }
+
+    private static AviClipStream clip(FrameRingBuffer ring, long fromMillis) {
+        int capacity = ring.getMaxFrames();
+        long[] sequences = new long[capacity];
+        int[] lengths = new int[capacity];
+        long[] timestamps = new long[capacity];
+        int count = ring.collect(fromMillis, sequences, lengths, timestamps);
+        return new AviClipStream(ring, sequences, lengths, timestamps, count);
+    }
+
+    @Test
+    public void writesHeadersFramesAndIndex() {
+        FrameRingBuffer ring = new FrameRingBuffer(10_000, 16);
+        byte[][] frames = {jpeg(100, 1), jpeg(101, 2), jpeg(150, 3)};
+        for (int i = 0; i < frames.length; i++) {
+            ring.add(frames[i], 1_000 + i * 100);
+        }
+        AviClipStream avi = clip(ring, 0);
+        byte[] file = readAll(avi);
+        assertEquals(avi.getLength(), file.length);
+
+        ByteBuffer b = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", fourCC(b, 0));
+        assertEquals(file.length - 8, b.getInt(4));
+        assertEquals("AVI ", fourCC(b, 8));
+        assertEquals("hdrl", fourCC(b, 20));
+        // avih: 100 ms per frame, frame count, largest frame and size from the SOF marker
+        assertEquals("avih", fourCC(b, 24));
+        assertEquals(100_000, b.getInt(32));
+        assertEquals(3, b.getInt(48));
+        assertEquals(150, b.getInt(60));
+        assertEquals(WIDTH, b.getInt(64));
+        assertEquals(HEIGHT, b.getInt(68));
+
+        assertEquals("LIST", fourCC(b, HEADER_SIZE - 12));
+        int moviLength = b.getInt(HEADER_SIZE - 8);
+        assertEquals("movi", fourCC(b, HEADER_SIZE - 4));
+        int position = HEADER_SIZE;
+        for (byte[] frame : frames) {
+            assertEquals("00dc", fourCC(b, position));
+            assertEquals(frame.length, b.getInt(position + 4));
+            assertArrayEquals(frame, Arrays.copyOfRange(file, position + 8, position + 8 + frame.length));
+            // Chunks are word aligned, odd frames are followed by a pad byte
+            position += 8 + frame.length + (frame.length & 1);
+        }
+        assertEquals(HEADER_SIZE - 4 + moviLength, position);
+
+        assertEquals("idx1", fourCC(b, position));
+        assertEquals(16 * frames.length, b.getInt(position + 4));
+        int offset = 4;
+        for (int i = 0; i < frames.length; i++) {
+            int entry = position + 8 + 16 * i;
+            assertEquals("00dc", fourCC(b, entry));
+            assertEquals(0x10, b.getInt(entry + 4));
+            assertEquals(offset, b.getInt(entry + 8));
+            assertEquals(frames[i].length, b.getInt(entry + 12));
+            offset += 8 + frames[i].length + (frames[i].length & 1);
+        }
+        assertEquals(file.length, position + 8 + 16 * frames.length);
+    }
+
+    @Test
+    public void evictedFrameBecomesJunkAndLeavesTheIndex() {
+        FrameRingBuffer ring = new FrameRingBuffer(350, 16);
+        ring.add(jpeg(100, 1), 1_000);
+        ring.add(jpeg(100, 2), 1_100);
+        ring.add(jpeg(100, 3), 1_200);
+        AviClipStream avi = clip(ring, 0);
+        // Wraps around and overwrites the first frame before the clip reaches it
+        ring.add(jpeg(100, 4), 1_300);
+
+        byte[] file = readAll(avi);
+        assertEquals(avi.getLength(), file.length);
+        ByteBuffer b = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("JUNK", fourCC(b, HEADER_SIZE));
+        assertEquals(100, b.getInt(HEADER_SIZE + 4));
+        assertEquals("00dc", fourCC(b, HEADER_SIZE + 108));
+        assertEquals("00dc", fourCC(b, HEADER_SIZE + 216));
+
+        int index = HEADER_SIZE + 3 * 108;
+        assertEquals("idx1", fourCC(b, index));
+        assertEquals(32, b.getInt(index + 4));
+        assertEquals(4 + 108, b.getInt(index + 8 + 8));
+        assertEquals(4 + 216, b.getInt(index + 8 + 16 + 8));
+        // The unused index entry is padded out with a JUNK chunk
+        assertEquals("JUNK", fourCC(b, index + 8 + 32));
+        assertEquals(8, b.getInt(index + 8 + 32 + 4));
+    }
+
+    @Test
+    public void emptyClipIsAValidFile() {
+        AviClipStream avi = clip(new FrameRingBuffer(100, 4), 0);
+        byte[] file = readAll(avi);
+        assertEquals(HEADER_SIZE + 8, file.length);
+        assertEquals(avi.getLength(), file.length);
+        ByteBuffer b = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(4, b.getInt(HEADER_SIZE - 8));
+        assertEquals("idx1", fourCC(b, HEADER_SIZE));
+    }
+
+    @Test
+    public void readsJpegSizeFromStartOfFrame() {
+        byte[] frame = jpeg(64, 0);
+        assertArrayEquals(new int[]{WIDTH, HEIGHT}, AviClipStream.readJpegSize(frame, frame.length));
+        frame[2] = 0;
+        assertNull(AviClipStream.readJpegSize(frame, frame.length));
+    }
+}
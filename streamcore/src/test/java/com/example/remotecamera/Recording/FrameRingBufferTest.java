@@ -0,0 +1,118 @@
+package com.example.remotecamera.Recording;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameRingBufferTest {
+
+    private static byte[] frame(int length, int fill) {
+        byte[] frame = new byte[length];
+        Arrays.fill(frame, (byte) fill);
+        return frame;
+    }
+
+    private static byte[] copy(FrameRingBuffer ring, long sequence, int length) {
+        byte[] dest = new byte[length];
+        return ring.copyFrame(sequence, dest) ? dest : null;
+    }
+
+    @Test
+    public void framesAreNumberedFromOne() {
+        FrameRingBuffer ring = new FrameRingBuffer(100, 8);
+        ring.add(frame(10, 1), 1_000);
+        ring.add(frame(20, 2), 1_100);
+        assertArrayEquals(frame(10, 1), copy(ring, 1, 10));
+        assertArrayEquals(frame(20, 2), copy(ring, 2, 20));
+        assertNull(copy(ring, 3, 20));
+        assertEquals(2, ring.getFrameCount());
+        assertEquals(100, ring.getRetainedMillis());
+    }
+
+    @Test
+    public void evictsOldestFramesWhenBytesRunOut() {
+        FrameRingBuffer ring = new FrameRingBuffer(100, 8);
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(ring.add(frame(30, i), i * 100));
+        }
+        // The fourth frame wraps to the start and overwrites the first
+        assertNull(copy(ring, 1, 30));
+        for (int i = 2; i <= 4; i++) {
+            assertArrayEquals(frame(30, i), copy(ring, i, 30));
+        }
+        assertEquals(3, ring.getFrameCount());
+        assertEquals(1, ring.getEvictedFrames());
+    }
+
+    @Test
+    public void evictsOldestFramesWhenSlotsRunOut() {
+        FrameRingBuffer ring = new FrameRingBuffer(1_000, 2);
+        ring.add(frame(10, 1), 100);
+        ring.add(frame(10, 2), 200);
+        ring.add(frame(10, 3), 300);
+        assertNull(copy(ring, 1, 10));
+        assertArrayEquals(frame(10, 3), copy(ring, 3, 10));
+        assertEquals(2, ring.getFrameCount());
+        assertEquals(1, ring.getEvictedFrames());
+    }
+
+    @Test
+    public void rejectsFrameLargerThanTheBuffer() {
+        FrameRingBuffer ring = new FrameRingBuffer(100, 8);
+        ring.add(frame(50, 1), 100);
+        assertFalse(ring.add(frame(101, 2), 200));
+        assertEquals(1, ring.getFrameCount());
+        assertArrayEquals(frame(50, 1), copy(ring, 1, 50));
+    }
+
+    @Test
+    public void collectReturnsFramesSinceTimestamp() {
+        FrameRingBuffer ring = new FrameRingBuffer(1_000, 8);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(frame(i, i), i * 100);
+        }
+        long[] sequences = new long[8];
+        int[] lengths = new int[8];
+        long[] timestamps = new long[8];
+        int count = ring.collect(300, sequences, lengths, timestamps);
+        assertEquals(3, count);
+        assertArrayEquals(new long[]{3, 4, 5}, Arrays.copyOf(sequences, count));
+        assertArrayEquals(new int[]{3, 4, 5}, Arrays.copyOf(lengths, count));
+        assertArrayEquals(new long[]{300, 400, 500}, Arrays.copyOf(timestamps, count));
+    }
+
+    @Test
+    public void matchesAModelUnderRandomFrameSizes() {
+        int capacity = 4_096;
+        FrameRingBuffer ring = new FrameRingBuffer(capacity, 64);
+        ArrayDeque<byte[]> retained = new ArrayDeque<>();
+        Random random = new Random(7);
+        for (long sequence = 1; sequence <= 5_000; sequence++) {
+            byte[] data = new byte[1 + random.nextInt(900)];
+            random.nextBytes(data);
+            assertTrue(ring.add(data, sequence));
+            retained.addLast(data);
+            while (retained.size() > ring.getFrameCount()) retained.removeFirst();
+
+            // Every frame the ring still claims to hold is intact, and they fit the budget together
+            int bytes = 0;
+            long oldest = sequence - retained.size() + 1;
+            long expected = oldest;
+            for (byte[] frame : retained) {
+                assertArrayEquals(frame, copy(ring, expected++, frame.length));
+                bytes += frame.length;
+            }
+            assertTrue(bytes <= capacity);
+            assertNull(copy(ring, oldest - 1, 1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new FrameRingBuffer(0, 8);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.remotecamera.Recording;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SegmentIndexTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("recordings").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void entriesPointAtTheirPartsAfterReopening() throws IOException {
+        SegmentRecorder recorder = new SegmentRecorder(directory, 60_000, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            byte[] frame = new byte[100 + i];
+            Arrays.fill(frame, (byte) i);
+            recorder.offer(frame, T0 + i * 100);
+        }
+        recorder.stop();
+
+        String name = "segment-" + T0;
+        SegmentIndex index = SegmentIndex.open(recorder.getIndexFile(name));
+        assertEquals(5, index.getCount());
+        assertEquals(T0 + 300, index.getTimestamp(3));
+        assertEquals(0, index.getOffset(0));
+
+        byte[] segment = Files.readAllBytes(recorder.getSegmentFile(name).toPath());
+        int entry = index.search(T0 + 250);
+        assertEquals(3, entry);
+        String part = new String(segment, (int) index.getOffset(entry), 90, StandardCharsets.US_ASCII);
+        assertTrue(part, part.startsWith("--frame\r\nContent-Type: image/jpeg\r\nContent-Length: 103\r\nX-Timestamp: " + (T0 + 300)));
+    }
+
+    @Test
+    public void searchFindsFirstEntryAtOrAfter() throws IOException {
+        File file = new File(directory, "segment.idx");
+        ByteBuffer entries = ByteBuffer.allocate(3 * SegmentIndex.ENTRY_SIZE);
+        SegmentIndex.putEntry(entries, 100, 0);
+        SegmentIndex.putEntry(entries, 200, 50);
+        SegmentIndex.putEntry(entries, 200, 90);
+        Files.write(file.toPath(), entries.array());
+
+        SegmentIndex index = SegmentIndex.open(file);
+        assertEquals(0, index.search(0));
+        assertEquals(0, index.search(100));
+        assertEquals(1, index.search(150));
+        assertEquals(1, index.search(200));
+        assertEquals(3, index.search(201));
+    }
+
+    @Test
+    public void partialTrailingEntryIsIgnored() throws IOException {
+        File file = new File(directory, "segment.idx");
+        ByteBuffer entries = ByteBuffer.allocate(SegmentIndex.ENTRY_SIZE + 7);
+        SegmentIndex.putEntry(entries, 100, 0);
+        Files.write(file.toPath(), entries.array());
+        assertEquals(1, SegmentIndex.open(file).getCount());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+        }
+        assertEquals(0, SegmentIndex.open(file).getCount());
+    }
+}
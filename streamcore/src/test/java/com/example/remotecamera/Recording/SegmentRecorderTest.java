@@ -0,0 +1,116 @@
+package com.example.remotecamera.Recording;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SegmentRecorderTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long SEGMENT_MILLIS = 1_000;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("recordings").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    private static byte[] frame(int length, int fill) {
+        byte[] frame = new byte[length];
+        Arrays.fill(frame, (byte) fill);
+        return frame;
+    }
+
+    private static String name(long startMillis) {
+        return "segment-" + startMillis;
+    }
+
+    // Offers one 1000 byte frame at each time and waits for the writer to close the last segment
+    private SegmentRecorder record(long maxTotalBytes, long maxAgeMillis, long... timestamps) throws IOException {
+        SegmentRecorder recorder = new SegmentRecorder(directory, SEGMENT_MILLIS, Long.MAX_VALUE, maxTotalBytes, maxAgeMillis);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertTrue(recorder.offer(frame(1_000, i), timestamps[i]));
+        }
+        recorder.stop();
+        return recorder;
+    }
+
+    @Test
+    public void rollsToANewSegmentEverySegmentMillis() throws IOException {
+        SegmentRecorder recorder = record(Long.MAX_VALUE, Long.MAX_VALUE, T0, T0 + 500, T0 + 1_000, T0 + 1_500, T0 + 2_200);
+        assertArrayEquals(new String[]{name(T0), name(T0 + 1_000), name(T0 + 2_200)}, recorder.listSegmentNames());
+        assertEquals(name(T0 + 2_200), recorder.getCurrentSegment());
+        assertEquals(5, recorder.getWrittenFrames());
+        assertEquals(2, SegmentIndex.open(recorder.getIndexFile(name(T0))).getCount());
+        assertEquals(2, SegmentIndex.open(recorder.getIndexFile(name(T0 + 1_000))).getCount());
+        assertEquals(1, SegmentIndex.open(recorder.getIndexFile(name(T0 + 2_200))).getCount());
+        assertNull(recorder.getLastError());
+    }
+
+    @Test
+    public void oldestSegmentsAreDeletedOverTheSizeBudget() throws IOException {
+        // Two finished segments of one frame fit, a third does not
+        SegmentRecorder recorder = record(2_500, Long.MAX_VALUE, T0, T0 + 1_000, T0 + 2_000, T0 + 3_000);
+        assertArrayEquals(new String[]{name(T0 + 1_000), name(T0 + 2_000), name(T0 + 3_000)}, recorder.listSegmentNames());
+        assertFalse(new File(directory, name(T0) + SegmentRecorder.INDEX_EXTENSION).exists());
+    }
+
+    @Test
+    public void segmentsPastTheAgeLimitAreDeleted() throws IOException {
+        SegmentRecorder recorder = record(Long.MAX_VALUE, 1_500, T0, T0 + 1_000, T0 + 2_000, T0 + 3_000);
+        assertArrayEquals(new String[]{name(T0 + 2_000), name(T0 + 3_000)}, recorder.listSegmentNames());
+    }
+
+    @Test
+    public void listingSkipsSegmentsWithoutIndexAndStaysValid() throws IOException {
+        SegmentRecorder recorder = record(Long.MAX_VALUE, Long.MAX_VALUE, T0, T0 + 400, T0 + 1_000, T0 + 2_000);
+        // Lose the index of the first and of a middle segment
+        assertTrue(new File(directory, name(T0) + SegmentRecorder.INDEX_EXTENSION).delete());
+        assertTrue(new File(directory, name(T0 + 1_000) + SegmentRecorder.INDEX_EXTENSION).delete());
+
+        String json = recorder.toJson();
+        assertTrue(json, json.startsWith("{\"written\":4,\"dropped\":0,\"error\":null,\"segments\":[{"));
+        assertTrue(json, json.endsWith("}]}"));
+        assertFalse(json, json.contains("[,"));
+        assertFalse(json, json.contains(",,"));
+        assertFalse(json.contains(name(T0) + "\""));
+        assertFalse(json.contains(name(T0 + 1_000)));
+        assertTrue(json, json.contains("{\"name\":\"" + name(T0 + 2_000) + "\",\"start\":" + (T0 + 2_000)
+                + ",\"end\":" + (T0 + 2_000) + ",\"frames\":1,"));
+        assertTrue(json, json.contains("\"recording\":true}"));
+    }
+
+    @Test
+    public void listingReportsEachSegment() throws IOException {
+        SegmentRecorder recorder = record(Long.MAX_VALUE, Long.MAX_VALUE, T0, T0 + 400, T0 + 1_000);
+        String json = recorder.toJson();
+        assertTrue(json, json.contains("{\"name\":\"" + name(T0) + "\",\"start\":" + T0 + ",\"end\":" + (T0 + 400)
+                + ",\"frames\":2,\"bytes\":" + new File(directory, name(T0) + SegmentRecorder.SEGMENT_EXTENSION).length()
+                + ",\"recording\":false},{\"name\":\"" + name(T0 + 1_000) + "\""));
+    }
+
+    @Test
+    public void requestPathsCannotEscapeTheDirectory() throws IOException {
+        SegmentRecorder recorder = record(Long.MAX_VALUE, Long.MAX_VALUE, T0);
+        assertNotNull(recorder.getSegmentFile(name(T0)));
+        assertNull(recorder.getSegmentFile("../" + name(T0)));
+        assertNull(recorder.getSegmentFile(name(T0 + 1)));
+    }
+}